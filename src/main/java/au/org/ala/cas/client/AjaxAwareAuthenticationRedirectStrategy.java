@@ -0,0 +1,80 @@
+package au.org.ala.cas.client;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.apereo.cas.client.authentication.AuthenticationRedirectStrategy;
+import org.apereo.cas.client.authentication.DefaultAuthenticationRedirectStrategy;
+
+import au.org.ala.cas.util.AjaxRequestDetector;
+
+/**
+ * An authentication redirect strategy that answers ajax requests, which cannot follow a redirect to the CAS login page,
+ * with a 401 response and a JSON body instead of a redirect:
+ * <pre>
+ *     {"error":"authentication_required","loginUrl":"https://auth.ala.org.au/cas/login?service=..."}
+ * </pre>
+ * so that the script can send the user to the login page itself.  Other requests are redirected as usual.  Ajax
+ * requests are detected by the default {@link AjaxRequestDetector}.
+ * <p>
+ * To use it, set the <code>authenticationRedirectStrategyClass</code> &lt;init-param&gt; of the CAS authentication
+ * filter to <code>au.org.ala.cas.client.AjaxAwareAuthenticationRedirectStrategy</code>.
+ *
+ * @see AjaxAwareGatewayStorage
+ */
+public class AjaxAwareAuthenticationRedirectStrategy implements AuthenticationRedirectStrategy {
+
+    public static final String ERROR_AUTHENTICATION_REQUIRED = "authentication_required";
+
+    private final AuthenticationRedirectStrategy delegate = new DefaultAuthenticationRedirectStrategy();
+
+    private final AjaxRequestDetector ajaxRequestDetector;
+
+    public AjaxAwareAuthenticationRedirectStrategy() {
+        this(AjaxRequestDetector.getDefault());
+    }
+
+    public AjaxAwareAuthenticationRedirectStrategy(final AjaxRequestDetector ajaxRequestDetector) {
+        this.ajaxRequestDetector = ajaxRequestDetector;
+    }
+
+    public void redirect(final HttpServletRequest request, final HttpServletResponse response,
+                         final String potentialRedirectUrl) throws IOException {
+        if (!ajaxRequestDetector.isAjax(request)) {
+            delegate.redirect(request, response, potentialRedirectUrl);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        final PrintWriter writer = response.getWriter();
+        writer.write("{\"error\":\"" + ERROR_AUTHENTICATION_REQUIRED + "\",\"loginUrl\":");
+        writeJsonString(writer, potentialRedirectUrl);
+        writer.write("}");
+        writer.flush();
+    }
+
+    private static void writeJsonString(final PrintWriter writer, final String str) {
+        if (str == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < str.length(); i++) {
+            final char c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20 || c == '<' || c == '>' || c == 0x2028 || c == 0x2029) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+}
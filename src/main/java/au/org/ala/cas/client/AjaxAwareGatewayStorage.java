@@ -3,6 +3,9 @@ package au.org.ala.cas.client;
 import org.apereo.cas.client.authentication.DefaultGatewayResolverImpl;
 import org.apereo.cas.client.authentication.GatewayResolver;
 
+import au.org.ala.cas.jfr.GatewayDecisionEvent;
+import au.org.ala.cas.util.AjaxRequestDetector;
+
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 
@@ -10,8 +13,11 @@ import jakarta.servlet.http.HttpSession;
  * The AjaxAwareGatewayStorage class delegates to a CAS DefaultGatewayResolverImpl with one difference:
  * if the request is determined to be an ajax request, the next call to hasGatewayedAlready() will return false as the
  * browser will not be follow the redirect to CAS due to domain origin restrictions.
- * Note that the mechanism used to detect the ajax request relies on the default jquery behaviour of setting the
- * X-Requested-With header.
+ * Ajax requests are detected by an {@link AjaxRequestDetector}, by default from the X-Requested-With header set by
+ * jquery, the Sec-Fetch-Mode header set by browsers for fetch() and XMLHttpRequest, and Accept headers asking for JSON
+ * rather than HTML.
+ *
+ * @see AjaxAwareAuthenticationRedirectStrategy
  */
 public class AjaxAwareGatewayStorage implements GatewayResolver {
 
@@ -19,26 +25,53 @@ public class AjaxAwareGatewayStorage implements GatewayResolver {
 
     private final DefaultGatewayResolverImpl delegate = new DefaultGatewayResolverImpl();
 
+    private final AjaxRequestDetector ajaxRequestDetector;
+
+    public AjaxAwareGatewayStorage() {
+        this(AjaxRequestDetector.getDefault());
+    }
+
+    public AjaxAwareGatewayStorage(final AjaxRequestDetector ajaxRequestDetector) {
+        this.ajaxRequestDetector = ajaxRequestDetector;
+    }
+
     public boolean hasGatewayedAlready(final HttpServletRequest request,
                                        final String serviceUrl) {
-        return delegate.hasGatewayedAlready(request, serviceUrl);
+        final GatewayDecisionEvent event = new GatewayDecisionEvent();
+        event.begin();
+        final boolean gatewayed = delegate.hasGatewayedAlready(request, serviceUrl);
+        if (event.shouldCommit()) {
+            event.operation = GatewayDecisionEvent.HAS_GATEWAYED_ALREADY;
+            event.uri = request.getRequestURI();
+            event.ajax = isAjax(request);
+            event.result = gatewayed;
+            event.commit();
+        }
+        return gatewayed;
     }
 
     public String storeGatewayInformation(final HttpServletRequest request,
                                           final String serviceUrl) {
-        if (!isAjax(request)) {
-            return delegate.storeGatewayInformation(request, serviceUrl);
+        final GatewayDecisionEvent event = new GatewayDecisionEvent();
+        event.begin();
+        final boolean ajax = isAjax(request);
+        final String result = ajax ? serviceUrl : delegate.storeGatewayInformation(request, serviceUrl);
+        if (event.shouldCommit()) {
+            event.operation = GatewayDecisionEvent.STORE_GATEWAY_INFORMATION;
+            event.uri = request.getRequestURI();
+            event.ajax = ajax;
+            event.result = !ajax;
+            event.commit();
         }
-        return serviceUrl;
+        return result;
     }
 
     /**
-     * Checks the X-Requested-With header for XMLHttpRequest (which is set by jquery).
      * @param request the request to check.
      * @return true if the request was initiated via ajax.
      */
     private boolean isAjax(HttpServletRequest request) {
-        return "XMLHttpRequest".equals(request.getHeader("X-Requested-With"));
+        return ajaxRequestDetector.isAjax(request);
     }
 
 }
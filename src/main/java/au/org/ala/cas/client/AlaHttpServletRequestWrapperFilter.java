@@ -34,6 +34,8 @@ import org.apereo.cas.client.util.AbstractConfigurationFilter;
 import org.apereo.cas.client.util.CommonUtils;
 import org.apereo.cas.client.validation.Assertion;
 
+import au.org.ala.cas.util.AuthenticationUtils;
+
 /**
  * Implementation of a filter that wraps the normal HttpServletRequest with a
  * wrapper that overrides the following methods to provide data from the
@@ -53,6 +55,11 @@ import org.apereo.cas.client.validation.Assertion;
  * Only the <code>isUserInRole()</code> needed to
  * be overridden to accommodate a csv list of roles in the returned user attributes.  This wrapper also supports
  * a list of roles.
+ * <p>
+ * If the <code>compactAssertion</code> &lt;init-param&gt; is <code>true</code> then the assertion stored in the
+ * session is replaced, on first use, by a {@link CompactAssertion} to reduce the memory held by each session, and the
+ * size of the session when it is replicated or persisted, as the compact assertion has a compact serialized form.  The
+ * compact principal cannot obtain proxy tickets, so this should not be enabled by applications that use them.
  * 
  * @author peter.flemming@csiro.au
  * @author simon.bear@csiro.au
@@ -60,12 +67,18 @@ import org.apereo.cas.client.validation.Assertion;
  */
 @Deprecated
 public class AlaHttpServletRequestWrapperFilter extends AbstractConfigurationFilter {
+
+    public static final String COMPACT_ASSERTION = "compactAssertion";
+
     /** Name of the attribute used to answer role membership queries */
     private String roleAttribute;
 
     /** Whether or not to ignore case in role membership queries */
     private boolean ignoreCase;
 
+    /** Whether to replace the session assertion with a compact copy */
+    private boolean compactAssertion;
+
     public void destroy() {
         // nothing to do
     }
@@ -86,10 +99,16 @@ public class AlaHttpServletRequestWrapperFilter extends AbstractConfigurationFil
     protected AttributePrincipal retrievePrincipalFromSessionOrRequest(final ServletRequest servletRequest) {
         final HttpServletRequest request = (HttpServletRequest) servletRequest;
         final HttpSession session = request.getSession(false);
-        final Assertion assertion = (Assertion) (session == null ? request
+        Assertion assertion = (Assertion) (session == null ? request
                 .getAttribute(AbstractCasFilter.CONST_CAS_ASSERTION) : session
                 .getAttribute(AbstractCasFilter.CONST_CAS_ASSERTION));
 
+        if (compactAssertion && session != null && assertion != null && !(assertion instanceof CompactAssertion)) {
+            assertion = CompactAssertion.compact(assertion,
+                    CommonUtils.isBlank(roleAttribute) ? AuthenticationUtils.ATTR_ROLES : roleAttribute, false);
+            session.setAttribute(AbstractCasFilter.CONST_CAS_ASSERTION, assertion);
+        }
+
         return assertion == null ? null : assertion.getPrincipal();
     }
 
@@ -97,6 +116,7 @@ public class AlaHttpServletRequestWrapperFilter extends AbstractConfigurationFil
         super.init(filterConfig);
         this.roleAttribute = getString(ConfigurationKeys.ROLE_ATTRIBUTE);
         this.ignoreCase = getBoolean(ConfigurationKeys.IGNORE_CASE);
+        this.compactAssertion = "true".equals(filterConfig.getInitParameter(COMPACT_ASSERTION));
     }
 
     final class CasHttpServletRequestWrapper extends HttpServletRequestWrapper {
@@ -0,0 +1,247 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.client;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apereo.cas.client.authentication.AttributePrincipal;
+import org.apereo.cas.client.validation.Assertion;
+
+import au.org.ala.cas.util.CompactAttributeMap;
+
+/**
+ * A memory efficient {@link Assertion} for storing in the session of every logged in user.  The principal is a
+ * {@link CompactAttributePrincipal}, the attributes are a {@link CompactAttributeMap} and the dates are held as
+ * primitive timestamps.  The context, which is usually empty, is kept as an unmodifiable copy.
+ * <p>
+ * Instances are serialized in the compact, versioned format of {@link CompactSerialization}, which is considerably
+ * smaller and faster than standard serialization of an {@link org.apereo.cas.client.validation.AssertionImpl} when
+ * sessions are replicated.
+ *
+ * @see CompactingTicketValidator
+ */
+public class CompactAssertion implements Assertion {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Timestamp standing in for a null date */
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final long validFromDate;
+    private final long validUntilDate;
+    private final long authenticationDate;
+    private final CompactAttributeMap attributes;
+    private final CompactAttributePrincipal principal;
+    private final Map<String, Serializable> context;
+
+    public CompactAssertion(final CompactAttributePrincipal principal, final Date validFromDate, final Date validUntilDate,
+                            final Date authenticationDate, final Map<String, ?> attributes) {
+        this(principal, validFromDate, validUntilDate, authenticationDate, attributes, null);
+    }
+
+    public CompactAssertion(final CompactAttributePrincipal principal, final Date validFromDate, final Date validUntilDate,
+                            final Date authenticationDate, final Map<String, ?> attributes, final Map<String, ? extends Serializable> context) {
+        this(principal, toTimestamp(validFromDate), toTimestamp(validUntilDate), toTimestamp(authenticationDate),
+                CompactAttributeMap.copyOf(attributes), copyOf(context));
+    }
+
+    private CompactAssertion(final CompactAttributePrincipal principal, final long validFromDate, final long validUntilDate,
+                             final long authenticationDate, final CompactAttributeMap attributes, final Map<String, Serializable> context) {
+        this.principal = principal;
+        this.validFromDate = validFromDate;
+        this.validUntilDate = validUntilDate;
+        this.authenticationDate = authenticationDate;
+        this.attributes = attributes;
+        this.context = context;
+    }
+
+    /**
+     * @param assertion The assertion to copy
+     * @param roleAttribute Name of the principal attribute holding the roles
+     * @param retainProxyDelegate Whether to keep the original principal in order to obtain proxy tickets, at the cost of
+     * retaining its attributes as well, see {@link CompactAttributePrincipal}
+     * @return A compact copy of the assertion, or the assertion itself if it is null or already compact
+     */
+    public static Assertion compact(final Assertion assertion, final String roleAttribute, final boolean retainProxyDelegate) {
+        if (assertion == null || assertion instanceof CompactAssertion) {
+            return assertion;
+        }
+        return new CompactAssertion(CompactAttributePrincipal.compact(assertion.getPrincipal(), roleAttribute, retainProxyDelegate),
+                assertion.getValidFromDate(), assertion.getValidUntilDate(), assertion.getAuthenticationDate(), assertion.getAttributes(),
+                assertion.getContext());
+    }
+
+    public Date getValidFromDate() {
+        return toDate(validFromDate);
+    }
+
+    public Date getValidUntilDate() {
+        return toDate(validUntilDate);
+    }
+
+    public Date getAuthenticationDate() {
+        return toDate(authenticationDate);
+    }
+
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    public Map<String, Serializable> getContext() {
+        return context;
+    }
+
+    public AttributePrincipal getPrincipal() {
+        return principal;
+    }
+
+    /**
+     * Same semantics as {@link org.apereo.cas.client.validation.AssertionImpl#isValid()}.
+     */
+    public boolean isValid() {
+        if (validFromDate == NO_DATE) {
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        return validFromDate < now && (validUntilDate == NO_DATE || validUntilDate > now);
+    }
+
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    private void readObject(final ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialized form required");
+    }
+
+    /**
+     * @return An unmodifiable copy of the context, or the shared empty map if it is null or empty
+     */
+    static Map<String, Serializable> copyOf(final Map<String, ? extends Serializable> context) {
+        if (context == null || context.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Serializable>(context));
+    }
+
+    private static long toTimestamp(final Date date) {
+        return date == null ? NO_DATE : date.getTime();
+    }
+
+    private static Date toDate(final long timestamp) {
+        return timestamp == NO_DATE ? null : new Date(timestamp);
+    }
+
+    /**
+     * The serialized form of a {@link CompactAssertion}.  The dates are written as the differences between successive
+     * timestamps, preceded by a byte flagging which are present and whether there is a principal and a context.  The
+     * context follows the attributes in the same encoding.
+     */
+    private static final class SerializedForm implements Externalizable {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final int PRINCIPAL_FLAG = 1 << 3;
+        private static final int CONTEXT_FLAG = 1 << 4;
+
+        private CompactAssertion assertion;
+
+        public SerializedForm() {
+        }
+
+        SerializedForm(final CompactAssertion assertion) {
+            this.assertion = assertion;
+        }
+
+        public void writeExternal(final ObjectOutput out) throws IOException {
+            CompactSerialization.writeVersion(out);
+            final long[] timestamps = { assertion.validFromDate, assertion.validUntilDate, assertion.authenticationDate };
+            int flags = 0;
+            for (int i = 0; i < timestamps.length; i++) {
+                if (timestamps[i] != NO_DATE) {
+                    flags |= 1 << i;
+                }
+            }
+            out.writeByte(flags | (assertion.principal != null ? PRINCIPAL_FLAG : 0) | (!assertion.context.isEmpty() ? CONTEXT_FLAG : 0));
+            long previous = 0;
+            for (final long timestamp : timestamps) {
+                if (timestamp != NO_DATE) {
+                    CompactSerialization.writeVarLong(out, CompactSerialization.zigZagEncode(timestamp - previous));
+                    previous = timestamp;
+                }
+            }
+
+            final CompactSerialization.StringTableWriter strings = new CompactSerialization.StringTableWriter(out);
+            CompactSerialization.writeAttributes(out, strings, assertion.attributes);
+            if (!assertion.context.isEmpty()) {
+                CompactSerialization.writeAttributes(out, strings, Collections.<String, Object>unmodifiableMap(assertion.context));
+            }
+            if (assertion.principal != null) {
+                CompactSerialization.writePrincipal(out, strings, assertion.principal);
+            }
+        }
+
+        public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+            CompactSerialization.readVersion(in);
+            final int flags = in.readUnsignedByte();
+            final long[] timestamps = new long[3];
+            long previous = 0;
+            for (int i = 0; i < timestamps.length; i++) {
+                if ((flags & (1 << i)) != 0) {
+                    previous += CompactSerialization.zigZagDecode(CompactSerialization.readVarLong(in));
+                    timestamps[i] = previous;
+                } else {
+                    timestamps[i] = NO_DATE;
+                }
+            }
+
+            final CompactSerialization.StringTableReader strings = new CompactSerialization.StringTableReader(in);
+            final CompactAttributeMap attributes = CompactSerialization.readAttributes(in, strings);
+            Map<String, Serializable> context = Collections.emptyMap();
+            if ((flags & CONTEXT_FLAG) != 0) {
+                context = readContext(in, strings);
+            }
+            final CompactAttributePrincipal principal = (flags & PRINCIPAL_FLAG) != 0
+                    ? CompactSerialization.readPrincipal(in, strings) : null;
+            assertion = new CompactAssertion(principal, timestamps[0], timestamps[1], timestamps[2], attributes, context);
+        }
+
+        private static Map<String, Serializable> readContext(final ObjectInput in, final CompactSerialization.StringTableReader strings)
+                throws IOException, ClassNotFoundException {
+            final Map<String, Serializable> context = new LinkedHashMap<String, Serializable>();
+            for (final Map.Entry<String, Object> entry : CompactSerialization.readAttributes(in, strings).entrySet()) {
+                if (entry.getValue() != null && !(entry.getValue() instanceof Serializable)) {
+                    throw new InvalidObjectException("Context value " + entry.getKey() + " is not serializable");
+                }
+                context.put(entry.getKey(), (Serializable) entry.getValue());
+            }
+            return Collections.unmodifiableMap(context);
+        }
+
+        private Object readResolve() {
+            return assertion;
+        }
+    }
+}
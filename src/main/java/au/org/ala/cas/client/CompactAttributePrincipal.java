@@ -0,0 +1,263 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.client;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apereo.cas.client.authentication.AttributePrincipal;
+import org.apereo.cas.client.util.CommonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.org.ala.cas.util.AuthenticationUtils;
+import au.org.ala.cas.util.CompactAttributeMap;
+import au.org.ala.cas.util.RoleAwarePrincipal;
+
+/**
+ * A memory efficient {@link AttributePrincipal} for storing in the session of every logged in user.
+ * <p>
+ * The attributes are held in a {@link CompactAttributeMap} with interned keys.  The value of the role attribute is
+ * replaced by a canonical instance shared by every principal with the same roles: a comma delimited string is interned
+ * and a collection is replaced by an unmodifiable list of interned roles.  The parsed roles are likewise held as a
+ * canonical, shared, unmodifiable set.
+ * <p>
+ * Proxy tickets can only be obtained if the principal was created with the original principal as its proxy delegate.
+ * The proxy granting ticket and the means to redeem it are private to the original principal, so the whole original
+ * principal, including its full size attribute map, is then retained and the memory saving is largely lost.  Retain
+ * the proxy delegate only in applications that need proxy tickets.
+ * <p>
+ * Instances are serialized in the compact, versioned format of {@link CompactSerialization} and the canonical role
+ * values are restored when they are read back.
+ *
+ * @see CompactAssertion
+ */
+public class CompactAttributePrincipal implements RoleAwarePrincipal {
+
+    private static final long serialVersionUID = 1L;
+
+    private final static Logger logger = LoggerFactory.getLogger(CompactAttributePrincipal.class);
+
+    /** Upper bound on the number of distinct role values that are shared, in case roles are unique per user */
+    private static final int MAX_CANONICAL_ROLES = 10000;
+    private static final ConcurrentMap<Object, Object> canonicalRoleValues = new ConcurrentHashMap<Object, Object>();
+    private static final ConcurrentMap<Object, Set<String>> canonicalRoleSets = new ConcurrentHashMap<Object, Set<String>>();
+
+    private final String name;
+    private final CompactAttributeMap attributes;
+    private final String roleAttribute;
+    private final Set<String> roles;
+    private final AttributePrincipal proxyDelegate;
+
+    /**
+     * @param name The principal name
+     * @param attributes The principal attributes
+     * @param roleAttribute Name of the attribute holding the roles, see {@link AuthenticationUtils#ATTR_ROLES}
+     * @param proxyDelegate Principal to obtain proxy tickets from, or null if proxy tickets are not required
+     */
+    public CompactAttributePrincipal(final String name, final Map<String, ?> attributes, final String roleAttribute, final AttributePrincipal proxyDelegate) {
+        CompactAttributeMap compactAttributes = CompactAttributeMap.copyOf(attributes);
+        final Object roleValue = roleAttribute == null ? null : compactAttributes.get(roleAttribute);
+        if (roleValue != null) {
+            compactAttributes = compactAttributes.withValue(roleAttribute, canonicalRoleValue(roleValue));
+        }
+
+        this.name = name;
+        this.attributes = compactAttributes;
+        this.roleAttribute = roleAttribute == null ? null : roleAttribute.intern();
+        this.roles = canonicalRoleSet(roleAttribute == null ? null : compactAttributes.get(roleAttribute));
+        this.proxyDelegate = proxyDelegate;
+    }
+
+    /**
+     * @param principal The principal to copy
+     * @param roleAttribute Name of the attribute holding the roles
+     * @param retainProxyDelegate Whether to keep the original principal in order to obtain proxy tickets, at the cost of
+     * retaining its attributes as well
+     * @return A compact copy of the principal, or the principal itself if it is already compact
+     */
+    public static CompactAttributePrincipal compact(final AttributePrincipal principal, final String roleAttribute, final boolean retainProxyDelegate) {
+        if (principal == null) {
+            return null;
+        }
+        if (principal instanceof CompactAttributePrincipal) {
+            return (CompactAttributePrincipal) principal;
+        }
+        return new CompactAttributePrincipal(principal.getName(), principal.getAttributes(), roleAttribute,
+                retainProxyDelegate ? principal : null);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    public String getRoleAttribute() {
+        return roleAttribute;
+    }
+
+    /**
+     * @return The user's roles as a shared, unmodifiable set
+     */
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    public AttributePrincipal getProxyDelegate() {
+        return proxyDelegate;
+    }
+
+    public String getProxyTicketFor(final String service) {
+        if (proxyDelegate == null) {
+            logger.debug("No proxy delegate for [{}], unable to obtain a proxy ticket for {}", name, service);
+            return null;
+        }
+        return proxyDelegate.getProxyTicketFor(service);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return o instanceof CompactAttributePrincipal && name.equals(((CompactAttributePrincipal) o).name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    private void readObject(final ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialized form required");
+    }
+
+    /**
+     * @return A shared instance equal to the role value, or the value itself if it cannot be shared
+     */
+    static Object canonicalRoleValue(final Object roleValue) {
+        Object key;
+        if (roleValue instanceof String) {
+            key = roleValue;
+        } else if (roleValue instanceof Collection<?>) {
+            final List<Object> roleList = new ArrayList<Object>(((Collection<?>) roleValue).size());
+            for (final Object role : (Collection<?>) roleValue) {
+                roleList.add(role instanceof String ? ((String) role).intern() : role);
+            }
+            key = Collections.unmodifiableList(roleList);
+        } else {
+            return roleValue;
+        }
+
+        final Object canonical = canonicalRoleValues.get(key);
+        if (canonical != null) {
+            return canonical;
+        }
+        if (key instanceof String) {
+            key = ((String) key).intern();
+        }
+        if (canonicalRoleValues.size() >= MAX_CANONICAL_ROLES) {
+            return key;
+        }
+        final Object existing = canonicalRoleValues.putIfAbsent(key, key);
+        return existing == null ? key : existing;
+    }
+
+    /**
+     * @return A shared set of the roles in the role value, parsed in the same way as {@link AuthenticationUtils#getUserRoles}
+     */
+    static Set<String> canonicalRoleSet(final Object roleValue) {
+        if (roleValue == null) {
+            return Collections.emptySet();
+        }
+
+        final Set<String> canonical = canonicalRoleSets.get(roleValue);
+        if (canonical != null) {
+            return canonical;
+        }
+
+        final Set<String> roles = new LinkedHashSet<String>();
+        if (roleValue instanceof Collection<?>) {
+            for (final Object role : (Collection<?>) roleValue) {
+                if (role != null) {
+                    roles.add(role.toString().intern());
+                }
+            }
+        } else if (roleValue instanceof String && CommonUtils.isNotBlank((String) roleValue)) {
+            for (final String role : ((String) roleValue).split(",")) {
+                roles.add(role.trim().intern());
+            }
+        }
+        final Set<String> roleSet = Collections.unmodifiableSet(roles);
+        if (canonicalRoleSets.size() >= MAX_CANONICAL_ROLES) {
+            return roleSet;
+        }
+        final Set<String> existing = canonicalRoleSets.putIfAbsent(roleValue, roleSet);
+        return existing == null ? roleSet : existing;
+    }
+
+    /**
+     * The serialized form of a {@link CompactAttributePrincipal} that is not part of a {@link CompactAssertion}.
+     */
+    private static final class SerializedForm implements Externalizable {
+
+        private static final long serialVersionUID = 1L;
+
+        private CompactAttributePrincipal principal;
+
+        public SerializedForm() {
+        }
+
+        SerializedForm(final CompactAttributePrincipal principal) {
+            this.principal = principal;
+        }
+
+        public void writeExternal(final ObjectOutput out) throws IOException {
+            CompactSerialization.writeVersion(out);
+            CompactSerialization.writePrincipal(out, new CompactSerialization.StringTableWriter(out), principal);
+        }
+
+        public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+            CompactSerialization.readVersion(in);
+            principal = CompactSerialization.readPrincipal(in, new CompactSerialization.StringTableReader(in));
+        }
+
+        private Object readResolve() {
+            return principal;
+        }
+    }
+}
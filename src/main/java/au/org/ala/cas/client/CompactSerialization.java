@@ -0,0 +1,321 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.client;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.apereo.cas.client.authentication.AttributePrincipal;
+
+import au.org.ala.cas.util.AuthenticationUtils;
+import au.org.ala.cas.util.CompactAttributeMap;
+
+/**
+ * The binary encoding used to serialize {@link CompactAssertion} and {@link CompactAttributePrincipal}, for example
+ * when sessions are replicated or persisted.
+ * <p>
+ * Each serialized object starts with a format version.  Strings are written once per object and then referred to by
+ * their index in a string table, which is pre-populated with the well known attribute names, so repeated attribute
+ * names and role values cost a byte or two.  Lists of strings are encoded element by element and any other attribute
+ * value falls back to standard serialization.  Integers are written as variable length quantities.
+ */
+final class CompactSerialization {
+
+    /** Current format version.  Readers must continue to accept every earlier version */
+    static final int VERSION = 1;
+
+    /** Bounds on the lengths read, so that corrupt input fails rather than allocating huge arrays */
+    private static final int MAX_STRING_BYTES = 1 << 20;
+    private static final int MAX_ELEMENTS = 1 << 16;
+
+    /**
+     * Strings that are in the string table before anything is written.  Part of the format: entries may only ever
+     * be appended, and doing so requires a new version.
+     */
+    private static final String[] WELL_KNOWN_STRINGS = {
+            AuthenticationUtils.ATTR_USER_ID,
+            AuthenticationUtils.ATTR_EMAIL_ADDRESS,
+            AuthenticationUtils.ATTR_FIRST_NAME,
+            AuthenticationUtils.ATTR_LAST_NAME,
+            AuthenticationUtils.ATTR_ROLES,
+            "authority",
+            "ROLE_USER",
+            "isFromNewLogin",
+            "authenticationDate",
+            "authenticationMethod",
+            "longTermAuthenticationRequestTokenUsed",
+            "successfulAuthenticationHandlers",
+            "credentialType",
+            "samlAuthenticationStatementAuthMethod",
+            "true",
+            "false"
+    };
+
+    private static final Map<String, Integer> WELL_KNOWN_INDEXES = new HashMap<String, Integer>();
+    static {
+        for (int i = 0; i < WELL_KNOWN_STRINGS.length; i++) {
+            WELL_KNOWN_INDEXES.put(WELL_KNOWN_STRINGS[i], i);
+        }
+    }
+
+    /** String codes: null, a new string, or (code - FIRST_REFERENCE) as an index into the string table */
+    private static final int NULL_STRING = 0;
+    private static final int NEW_STRING = 1;
+    private static final int FIRST_REFERENCE = 2;
+
+    /** Attribute value tags */
+    private static final int VALUE_NULL = 0;
+    private static final int VALUE_STRING = 1;
+    private static final int VALUE_STRING_LIST = 2;
+    private static final int VALUE_OBJECT = 3;
+
+    private CompactSerialization() {
+    }
+
+    /**
+     * Writes strings, replacing those already written with a reference to the first occurrence.
+     */
+    static final class StringTableWriter {
+
+        private final ObjectOutput out;
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>(WELL_KNOWN_INDEXES);
+
+        StringTableWriter(final ObjectOutput out) {
+            this.out = out;
+        }
+
+        void write(final String str) throws IOException {
+            if (str == null) {
+                writeVarInt(out, NULL_STRING);
+                return;
+            }
+            final Integer index = indexes.get(str);
+            if (index != null) {
+                writeVarInt(out, index + FIRST_REFERENCE);
+                return;
+            }
+            indexes.put(str, indexes.size());
+            final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, NEW_STRING);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads strings written by a {@link StringTableWriter}.
+     */
+    static final class StringTableReader {
+
+        private final ObjectInput in;
+        private final List<String> strings = new ArrayList<String>(WELL_KNOWN_STRINGS.length + 16);
+
+        StringTableReader(final ObjectInput in) {
+            this.in = in;
+            Collections.addAll(strings, WELL_KNOWN_STRINGS);
+        }
+
+        String read() throws IOException {
+            final int code = readVarInt(in);
+            if (code == NULL_STRING) {
+                return null;
+            } else if (code == NEW_STRING) {
+                final byte[] bytes = new byte[readLength(in, MAX_STRING_BYTES)];
+                in.readFully(bytes);
+                final String str = new String(bytes, StandardCharsets.UTF_8);
+                strings.add(str);
+                return str;
+            }
+            final int index = code - FIRST_REFERENCE;
+            if (index >= strings.size()) {
+                throw new InvalidObjectException("Invalid string reference " + index);
+            }
+            return strings.get(index);
+        }
+    }
+
+    static void writeVersion(final ObjectOutput out) throws IOException {
+        writeVarInt(out, VERSION);
+    }
+
+    static void readVersion(final ObjectInput in) throws IOException {
+        final int version = readVarInt(in);
+        if (version < 1 || version > VERSION) {
+            throw new InvalidObjectException("Unsupported serialization format version " + version);
+        }
+    }
+
+    static void writePrincipal(final ObjectOutput out, final StringTableWriter strings, final CompactAttributePrincipal principal) throws IOException {
+        strings.write(principal.getName());
+        strings.write(principal.getRoleAttribute());
+        writeAttributes(out, strings, principal.getAttributes());
+        out.writeBoolean(principal.getProxyDelegate() != null);
+        if (principal.getProxyDelegate() != null) {
+            out.writeObject(principal.getProxyDelegate());
+        }
+    }
+
+    static CompactAttributePrincipal readPrincipal(final ObjectInput in, final StringTableReader strings) throws IOException, ClassNotFoundException {
+        final String name = strings.read();
+        final String roleAttribute = strings.read();
+        final CompactAttributeMap attributes = readAttributes(in, strings);
+        final AttributePrincipal proxyDelegate = in.readBoolean() ? (AttributePrincipal) in.readObject() : null;
+        return new CompactAttributePrincipal(name, attributes, roleAttribute, proxyDelegate);
+    }
+
+    static void writeAttributes(final ObjectOutput out, final StringTableWriter strings, final Map<String, Object> attributes) throws IOException {
+        writeVarInt(out, attributes.size());
+        for (final Map.Entry<String, Object> entry : attributes.entrySet()) {
+            strings.write(entry.getKey());
+            writeValue(out, strings, entry.getValue());
+        }
+    }
+
+    static CompactAttributeMap readAttributes(final ObjectInput in, final StringTableReader strings) throws IOException, ClassNotFoundException {
+        final int size = readLength(in, MAX_ELEMENTS);
+        final String[] keys = new String[size];
+        final Object[] values = new Object[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = strings.read();
+            values[i] = readValue(in, strings);
+        }
+        return CompactAttributeMap.of(keys, values);
+    }
+
+    private static void writeValue(final ObjectOutput out, final StringTableWriter strings, final Object value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, VALUE_NULL);
+        } else if (value instanceof String) {
+            writeVarInt(out, VALUE_STRING);
+            strings.write((String) value);
+        } else if (isStringList(value)) {
+            final List<?> list = (List<?>) value;
+            writeVarInt(out, VALUE_STRING_LIST);
+            writeVarInt(out, list.size());
+            for (int i = 0; i < list.size(); i++) {
+                strings.write((String) list.get(i));
+            }
+        } else {
+            writeVarInt(out, VALUE_OBJECT);
+            out.writeObject(value);
+        }
+    }
+
+    private static Object readValue(final ObjectInput in, final StringTableReader strings) throws IOException, ClassNotFoundException {
+        final int tag = readVarInt(in);
+        switch (tag) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return strings.read();
+            case VALUE_STRING_LIST:
+                final int size = readLength(in, MAX_ELEMENTS);
+                final List<String> list = new ArrayList<String>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(strings.read());
+                }
+                return list;
+            case VALUE_OBJECT:
+                return in.readObject();
+            default:
+                throw new InvalidObjectException("Invalid attribute value tag " + tag);
+        }
+    }
+
+    /**
+     * @return true if the value is a random access list holding only strings, which is how CAS returns multi-valued
+     * attributes
+     */
+    private static boolean isStringList(final Object value) {
+        if (!(value instanceof List<?>) || !(value instanceof RandomAccess)) {
+            return false;
+        }
+        final List<?> list = (List<?>) value;
+        for (int i = 0; i < list.size(); i++) {
+            if (!(list.get(i) instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void writeVarInt(final ObjectOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(final ObjectInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new InvalidObjectException("Malformed variable length integer");
+    }
+
+    /**
+     * @return A length or element count, checked to be between 0 and max
+     */
+    private static int readLength(final ObjectInput in, final int max) throws IOException {
+        final int length = readVarInt(in);
+        if (length < 0 || length > max) {
+            throw new InvalidObjectException("Invalid length " + length);
+        }
+        return length;
+    }
+
+    static void writeVarLong(final ObjectOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(final ObjectInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new InvalidObjectException("Malformed variable length integer");
+    }
+
+    static long zigZagEncode(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long zigZagDecode(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,55 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.client;
+
+import org.apereo.cas.client.validation.Assertion;
+import org.apereo.cas.client.validation.TicketValidationException;
+import org.apereo.cas.client.validation.TicketValidator;
+
+import au.org.ala.cas.util.AuthenticationUtils;
+
+/**
+ * Decorates a {@link TicketValidator} so that the assertions it returns are replaced by a {@link CompactAssertion}
+ * before they are stored in the session.  For example, with Spring:
+ * <pre>
+ *     filter.setTicketValidator(new CompactingTicketValidator(new Cas30ServiceTicketValidator(casServerUrlPrefix)));
+ * </pre>
+ */
+public class CompactingTicketValidator implements TicketValidator {
+
+    private final TicketValidator delegate;
+    private final String roleAttribute;
+    private final boolean retainProxyDelegate;
+
+    public CompactingTicketValidator(final TicketValidator delegate) {
+        this(delegate, AuthenticationUtils.ATTR_ROLES, false);
+    }
+
+    /**
+     * @param delegate The validator to decorate
+     * @param roleAttribute Name of the principal attribute holding the roles
+     * @param retainProxyDelegate Whether to keep the original principal in order to obtain proxy tickets, which retains
+     * its attributes as well and so gives up most of the memory saving
+     */
+    public CompactingTicketValidator(final TicketValidator delegate, final String roleAttribute, final boolean retainProxyDelegate) {
+        this.delegate = delegate;
+        this.roleAttribute = roleAttribute;
+        this.retainProxyDelegate = retainProxyDelegate;
+    }
+
+    public Assertion validate(final String ticket, final String service) throws TicketValidationException {
+        return CompactAssertion.compact(delegate.validate(ticket, service), roleAttribute, retainProxyDelegate);
+    }
+}
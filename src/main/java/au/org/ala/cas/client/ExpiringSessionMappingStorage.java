@@ -0,0 +1,202 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.servlet.http.HttpSession;
+
+import org.apereo.cas.client.session.SessionMappingStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SessionMappingStorage} for single logout that, unlike
+ * {@link org.apereo.cas.client.session.HashMapBackedSessionMappingStorage}, does not serialize every login and logout
+ * on one lock and does not keep the mappings of sessions that time out without a logout request.
+ * <p>
+ * The mappings are held in concurrent maps and the pair of mappings for each session is updated under one of a set of
+ * striped locks chosen by the session id, so unrelated sessions do not contend.  Sessions that have been invalidated
+ * or have exceeded their maximum inactive interval are removed by a sweep that runs at most once every
+ * <code>sweepInterval</code>, in the thread that adds a mapping, as well as when the container reports that the session
+ * was destroyed.  A session holds at most one mapping: mapping a session again replaces its previous service ticket.
+ * <p>
+ * To use it, set it as the session mapping storage of the <code>SingleSignOutFilter</code>, or of the
+ * <code>SingleSignOutHandler</code> shared with the <code>SingleSignOutHttpSessionListener</code>.
+ */
+public class ExpiringSessionMappingStorage implements SessionMappingStorage {
+
+    private final static Logger logger = LoggerFactory.getLogger(ExpiringSessionMappingStorage.class);
+
+    public static final int DEFAULT_LOCK_STRIPES = 64;
+    public static final long DEFAULT_SWEEP_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    /** Mapping id (service ticket) to the mapped session */
+    private final ConcurrentHashMap<String, Entry> sessions = new ConcurrentHashMap<String, Entry>();
+    /** Session id to mapping id */
+    private final ConcurrentHashMap<String, String> mappingIds = new ConcurrentHashMap<String, String>();
+
+    private final Object[] locks;
+    private final long sweepInterval;
+    private final AtomicLong nextSweep;
+
+    public ExpiringSessionMappingStorage() {
+        this(DEFAULT_LOCK_STRIPES, DEFAULT_SWEEP_INTERVAL);
+    }
+
+    /**
+     * @param lockStripes The number of locks, rounded up to a power of two
+     * @param sweepInterval The minimum interval in milliseconds between sweeps for expired sessions
+     */
+    public ExpiringSessionMappingStorage(final int lockStripes, final long sweepInterval) {
+        if (lockStripes < 1 || lockStripes > (1 << 16)) {
+            throw new IllegalArgumentException("lockStripes must be between 1 and 65536");
+        }
+        int stripes = 1;
+        while (stripes < lockStripes) {
+            stripes <<= 1;
+        }
+        this.locks = new Object[stripes];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        this.sweepInterval = sweepInterval;
+        this.nextSweep = new AtomicLong(System.currentTimeMillis() + sweepInterval);
+    }
+
+    public void addSessionById(final String mappingId, final HttpSession session) {
+        final String sessionId = session.getId();
+        final Entry entry = new Entry(sessionId, session);
+        final Entry replaced;
+        synchronized (lockFor(sessionId)) {
+            final String previous = mappingIds.put(sessionId, mappingId);
+            if (previous != null && !previous.equals(mappingId)) {
+                sessions.remove(previous);
+            }
+            replaced = sessions.put(mappingId, entry);
+        }
+        if (replaced != null && !replaced.sessionId.equals(sessionId)) {
+            removeMappingId(replaced.sessionId, mappingId);
+        }
+        sweepIfDue();
+    }
+
+    public void removeBySessionById(final String sessionId) {
+        synchronized (lockFor(sessionId)) {
+            final String mappingId = mappingIds.remove(sessionId);
+            if (mappingId != null) {
+                sessions.remove(mappingId);
+            }
+        }
+    }
+
+    public HttpSession removeSessionByMappingId(final String mappingId) {
+        final Entry entry = sessions.get(mappingId);
+        if (entry == null) {
+            return null;
+        }
+        // Only the caller that actually removed the mapping gets the session, so that it is destroyed once
+        return remove(mappingId, entry) ? entry.session : null;
+    }
+
+    /**
+     * @return The number of mapped sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Removes the mappings of sessions that have been invalidated or have expired.
+     *
+     * @return The number of mappings removed
+     */
+    public int sweep() {
+        final long now = System.currentTimeMillis();
+        int removed = 0;
+        for (final Map.Entry<String, Entry> mapping : sessions.entrySet()) {
+            if (isExpired(mapping.getValue().session, now) && remove(mapping.getKey(), mapping.getValue())) {
+                removed++;
+            }
+        }
+        logger.debug("Removed {} expired session mappings, {} remaining", removed, sessions.size());
+        return removed;
+    }
+
+    private void sweepIfDue() {
+        final long next = nextSweep.get();
+        final long now = System.currentTimeMillis();
+        // Only the thread that advances the next sweep time sweeps
+        if (now >= next && nextSweep.compareAndSet(next, now + sweepInterval)) {
+            sweep();
+        }
+    }
+
+    /**
+     * Removes the mapping id of a session whose mapping has been taken over by another session, under the lock of the
+     * replaced session rather than while holding the lock of the new one, so that no thread holds two locks.
+     */
+    private void removeMappingId(final String sessionId, final String mappingId) {
+        synchronized (lockFor(sessionId)) {
+            final Entry current = sessions.get(mappingId);
+            // The replaced session may have been mapped to the same id again since
+            if (current == null || !current.sessionId.equals(sessionId)) {
+                mappingIds.remove(sessionId, mappingId);
+            }
+        }
+    }
+
+    /**
+     * @return true if the mapping was removed, false if it had already been removed or replaced
+     */
+    private boolean remove(final String mappingId, final Entry entry) {
+        synchronized (lockFor(entry.sessionId)) {
+            if (!sessions.remove(mappingId, entry)) {
+                return false;
+            }
+            mappingIds.remove(entry.sessionId, mappingId);
+            return true;
+        }
+    }
+
+    private Object lockFor(final String sessionId) {
+        final int hash = sessionId.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+    }
+
+    private static boolean isExpired(final HttpSession session, final long now) {
+        try {
+            final int maxInactiveInterval = session.getMaxInactiveInterval();
+            return maxInactiveInterval > 0 && now - session.getLastAccessedTime() > maxInactiveInterval * 1000L;
+        } catch (final IllegalStateException e) {
+            // The session has been invalidated
+            return true;
+        }
+    }
+
+    private static final class Entry {
+
+        final String sessionId;
+        final HttpSession session;
+
+        Entry(final String sessionId, final HttpSession session) {
+            this.sessionId = sessionId;
+            this.session = session;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.client;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import okhttp3.*;
+import org.apereo.cas.client.authentication.AttributePrincipal;
+import org.apereo.cas.client.validation.Assertion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.org.ala.cas.jfr.CasRestCallEvent;
+import au.org.ala.cas.util.AuthenticationUtils;
+
+/**
+ * <p>
+ * Helper class that invokes a CAS protected web service on behalf of the user of the current request, using a CAS
+ * proxy ticket rather than the credentials required by {@link WebServiceAuthenticationHelper}.
+ * <p>
+ * The proxy tickets are obtained through the {@link AttributePrincipal} of the validated {@link Assertion}, as read by
+ * {@link AlaHttpServletRequestWrapperFilter}, so the validation filter must be configured with a
+ * <code>proxyCallbackUrl</code> in order for the principal to hold a Proxy Granting Ticket.  The
+ * <code>compactAssertion</code> option of {@link AlaHttpServletRequestWrapperFilter} drops the proxy delegate, so use
+ * a {@link CompactingTicketValidator} with <code>retainProxyDelegate</code> instead if assertions are to be compacted.
+ * <p>
+ * The principal holding a user's Proxy Granting Ticket is cached per user name.  Proxy tickets can optionally be
+ * prefetched, by giving a prefetch time to live: once a user has invoked the same service twice within the time to
+ * live, the next proxy ticket for the service is requested in the background each time one is used, so that the next
+ * invocation finds its ticket already issued or in flight.  Tickets are always issued for the exact URL invoked,
+ * query included, so only repeated invocations of the same URL are prefetched.  A URL invoked only once costs one
+ * request to CAS.  Prefetched tickets that are not used within the time to live are discarded, so it should be kept
+ * below the proxy ticket expiry configured on the CAS server.
+ */
+public class ProxyWebServiceHelper {
+
+	private final static Logger logger = LoggerFactory.getLogger(ProxyWebServiceHelper.class);
+
+	/** Recommended time to live of a prefetched proxy ticket, well below the CAS default proxy ticket expiry of 10 seconds */
+	public static final long RECOMMENDED_PREFETCH_TTL = 5000;
+
+	/** Users are forgotten once they have not invoked a service for this long, as for a default session timeout */
+	private static final long USER_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+	private static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+	private static final int PREFETCH_THREADS = 4;
+	private static final int PREFETCH_QUEUE_SIZE = 256;
+
+	private final long prefetchTtl;
+	private final ConcurrentMap<String, UserTickets> users = new ConcurrentHashMap<String, UserTickets>();
+	private final AtomicLong nextSweep = new AtomicLong();
+	private final ThreadPoolExecutor prefetchExecutor;
+
+	final OkHttpClient client = new OkHttpClient();
+
+	/**
+	 * Constructor that does not prefetch proxy tickets.
+	 */
+	public ProxyWebServiceHelper() {
+		this(0);
+	}
+
+	/**
+	 * @param prefetchTtl Time to live of a prefetched proxy ticket in milliseconds, such as
+	 * {@link #RECOMMENDED_PREFETCH_TTL}, or 0 to disable prefetching
+	 */
+	public ProxyWebServiceHelper(final long prefetchTtl) {
+		if (prefetchTtl < 0) {
+			throw new IllegalArgumentException("prefetchTtl must not be negative");
+		}
+		this.prefetchTtl = prefetchTtl;
+		if (prefetchTtl > 0) {
+			this.prefetchExecutor = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(PREFETCH_QUEUE_SIZE), new PrefetchThreadFactory());
+			this.prefetchExecutor.allowCoreThreadTimeOut(true);
+		} else {
+			this.prefetchExecutor = null;
+		}
+	}
+
+	/**
+	 * Invokes a web service on behalf of the authenticated user of a request.
+	 *
+	 * @param request The request, which must have passed the CAS validation filter
+	 * @param serviceUrl Web service URI
+	 * @return Web service response as a string, or null if the user is not authenticated or the invocation failed
+	 */
+	public String invoke(final HttpServletRequest request, final String serviceUrl) {
+		return invoke(AuthenticationUtils.getAssertion(request), serviceUrl);
+	}
+
+	/**
+	 * Invokes a web service on behalf of the principal of an assertion.  Firstly a CAS proxy ticket is obtained and
+	 * passed with the web service request.
+	 *
+	 * @param assertion The validated assertion, may be null
+	 * @param serviceUrl Web service URI
+	 * @return Web service response as a string, or null if there is no assertion or the invocation failed
+	 */
+	public String invoke(final Assertion assertion, final String serviceUrl) {
+		if (assertion == null || assertion.getPrincipal() == null) {
+			logger.debug("No authenticated principal, unable to invoke {}", serviceUrl);
+			return null;
+		}
+		String proxyTicket = getProxyTicket(assertion.getPrincipal(), serviceUrl);
+		if (proxyTicket != null) {
+			return getServiceResponse(serviceUrl, proxyTicket);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Obtains a proxy ticket for a service URL, from a prefetched ticket if one is available.  If the principal cannot
+	 * issue proxy tickets, for instance because it is a compact copy without its proxy delegate, then the last principal
+	 * of the same user that could is used instead.
+	 *
+	 * @param principal The authenticated principal
+	 * @param serviceUrl Web service URI
+	 * @return The proxy ticket id, or null if none could be obtained
+	 */
+	public String getProxyTicket(final AttributePrincipal principal, final String serviceUrl) {
+		final long now = System.currentTimeMillis();
+		sweepIfDue(now);
+		final UserTickets user = getUserTickets(principal.getName(), now);
+
+		String proxyTicket = prefetchExecutor == null ? null : user.takePrefetched(serviceUrl, now);
+		final boolean repeated = proxyTicket != null || user.seenRecently(serviceUrl, now, prefetchTtl);
+		AttributePrincipal proxyPrincipal = user.proxyPrincipal;
+		if (proxyPrincipal == null) {
+			proxyPrincipal = principal;
+		}
+		if (proxyTicket == null) {
+			proxyPrincipal = principal;
+			proxyTicket = principal.getProxyTicketFor(serviceUrl);
+			final AttributePrincipal cached = user.proxyPrincipal;
+			if (proxyTicket == null && cached != null && cached != principal) {
+				logger.debug("Principal [{}] cannot issue proxy tickets, using the cached Proxy Granting Ticket", principal.getName());
+				proxyPrincipal = cached;
+				proxyTicket = cached.getProxyTicketFor(serviceUrl);
+			}
+			if (proxyTicket == null) {
+				logger.warn("Unable to obtain a proxy ticket for [{}] to access {}", principal.getName(), serviceUrl);
+				user.proxyPrincipal = null;
+				return null;
+			}
+			user.proxyPrincipal = proxyPrincipal;
+		}
+
+		if (repeated) {
+			prefetch(user, proxyPrincipal, serviceUrl, now);
+		}
+		return proxyTicket;
+	}
+
+	/**
+	 * Stops the background prefetching of proxy tickets and forgets all cached Proxy Granting Tickets.
+	 */
+	public void shutdown() {
+		if (prefetchExecutor != null) {
+			prefetchExecutor.shutdownNow();
+		}
+		users.clear();
+	}
+
+	/**
+	 * @return The number of users with a cached Proxy Granting Ticket or prefetched proxy tickets
+	 */
+	int getCachedUsers() {
+		return users.size();
+	}
+
+	private UserTickets getUserTickets(final String userName, final long now) {
+		UserTickets user = users.get(userName);
+		if (user == null) {
+			final UserTickets created = new UserTickets();
+			user = users.putIfAbsent(userName, created);
+			if (user == null) {
+				user = created;
+			}
+		}
+		user.lastUsed = now;
+		return user;
+	}
+
+	/**
+	 * Requests the next proxy ticket for the service in the background, unless one is already prefetched.
+	 */
+	private void prefetch(final UserTickets user, final AttributePrincipal proxyPrincipal, final String service, final long now) {
+		if (user.prefetched.containsKey(service)) {
+			return;
+		}
+		final Prefetched prefetched = new Prefetched(proxyPrincipal, service, now + prefetchTtl);
+		if (user.prefetched.putIfAbsent(service, prefetched) != null) {
+			return;
+		}
+		try {
+			prefetchExecutor.execute(prefetched.task);
+		} catch (RejectedExecutionException e) {
+			logger.debug("Prefetch queue full, not prefetching a proxy ticket for {}", service);
+			user.prefetched.remove(service, prefetched);
+		}
+	}
+
+	/**
+	 * Forgets users that have been idle for longer than a session would last.  At most one thread sweeps per interval.
+	 */
+	private void sweepIfDue(final long now) {
+		final long due = nextSweep.get();
+		if (now < due || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL)) {
+			return;
+		}
+		for (Iterator<UserTickets> i = users.values().iterator(); i.hasNext();) {
+			final UserTickets user = i.next();
+			if (now - user.lastUsed > USER_IDLE_TIMEOUT) {
+				i.remove();
+			} else {
+				user.discardExpired(now, prefetchTtl);
+			}
+		}
+	}
+
+	/**
+	 * Invokes a web service request via an HTTP Get method.
+	 *
+	 * @param url Web service URI
+	 * @param proxyTicket CAS proxy ticket for web service
+	 * @return Web service response as a string
+	 */
+	private String getServiceResponse(final String url, final String proxyTicket) {
+		Request request = new Request.Builder()
+				.url(url + (url.indexOf('?') < 0 ? "?ticket=" : "&ticket=") + proxyTicket)
+				.build();
+
+		CasRestCallEvent event = new CasRestCallEvent();
+		event.begin();
+		try {
+			Call call = client.newCall(request);
+
+			final String response;
+			final int statusCode;
+
+			try (Response httpResponse = call.execute()) {
+				statusCode = httpResponse.code();
+				response = httpResponse.body().string();
+			}
+			event.commit(CasRestCallEvent.SERVICE, url, statusCode, response);
+
+			switch (statusCode) {
+			case 200:
+				return response;
+
+			default:
+				logger.warn("Invalid response code ({}) from web service {}", statusCode, url);
+				logger.info("Response (1k): {}", getMaxString(response));
+				break;
+			}
+		}
+
+		catch (final IOException e) {
+			event.commit(CasRestCallEvent.SERVICE, url, 0, null);
+			logger.warn("Exception calling {}", url, e);
+		}
+
+		return null;
+	}
+
+	private static String getMaxString(final String content) {
+		return content.length() > 1024 ? content.substring(0, 1024) : content;
+	}
+
+	/**
+	 * The cached Proxy Granting Ticket holder and prefetched proxy tickets of a user.
+	 */
+	private static final class UserTickets {
+
+		final ConcurrentMap<String, Prefetched> prefetched = new ConcurrentHashMap<String, Prefetched>();
+		/** When each service was last invoked, only kept while prefetching */
+		final ConcurrentMap<String, Long> lastSeen = new ConcurrentHashMap<String, Long>();
+		volatile AttributePrincipal proxyPrincipal;
+		volatile long lastUsed;
+
+		/**
+		 * Takes the prefetched ticket for a service, so that each prefetched ticket is used at most once, waiting for
+		 * it if the request to CAS is still in flight.
+		 *
+		 * @return The proxy ticket, or null if none was prefetched, it has expired or it could not be obtained
+		 */
+		String takePrefetched(final String serviceUrl, final long now) {
+			final Prefetched ticket = prefetched.remove(serviceUrl);
+			if (ticket == null || now > ticket.expires) {
+				return null;
+			}
+			try {
+				return ticket.task.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				logger.warn("Exception prefetching a proxy ticket for {}", serviceUrl, e.getCause());
+			}
+			return null;
+		}
+
+		/**
+		 * Records an invocation of a service.
+		 *
+		 * @return true if the service was previously invoked within the time to live
+		 */
+		boolean seenRecently(final String service, final long now, final long ttl) {
+			if (ttl == 0) {
+				return false;
+			}
+			final Long previous = lastSeen.put(service, now);
+			return previous != null && now - previous <= ttl;
+		}
+
+		void discardExpired(final long now, final long ttl) {
+			for (Iterator<Prefetched> i = prefetched.values().iterator(); i.hasNext();) {
+				if (now > i.next().expires) {
+					i.remove();
+				}
+			}
+			for (Iterator<Long> i = lastSeen.values().iterator(); i.hasNext();) {
+				if (now - i.next() > ttl) {
+					i.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A proxy ticket requested in the background.
+	 */
+	private static final class Prefetched {
+
+		final FutureTask<String> task;
+		final long expires;
+
+		Prefetched(final AttributePrincipal proxyPrincipal, final String service, final long expires) {
+			this.task = new FutureTask<String>(() -> proxyPrincipal.getProxyTicketFor(service));
+			this.expires = expires;
+		}
+	}
+
+	private static final class PrefetchThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "cas-proxy-ticket-prefetch-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,270 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.client;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.apereo.cas.client.authentication.AttributePrincipal;
+import org.apereo.cas.client.configuration.ConfigurationKeys;
+import org.apereo.cas.client.util.AbstractConfigurationFilter;
+import org.apereo.cas.client.util.CommonUtils;
+import org.apereo.cas.client.validation.Assertion;
+
+import au.org.ala.cas.util.AuthenticationUtils;
+import au.org.ala.cas.util.PatternMatchingUtils;
+import au.org.ala.cas.util.UriNormalizer;
+import au.org.ala.cas.util.UriPatternMatcher;
+
+/**
+ * Filter that rejects requests with a 403 response, before they reach the application, if the request URI requires a
+ * role that the authenticated user does not have.
+ * <p>
+ * The rules are specified by the <code>uriRoleFilterPattern</code> &lt;init-param&gt; as a list of
+ * <code>patterns = roles</code> entries, separated by new lines or semicolons.  The patterns are a comma delimited list
+ * in the same form as the {@link UriFilter} patterns, prefixed with the <code>contextPath</code>, and the roles are a
+ * comma delimited list.  A rule is satisfied if the user has any one of its roles, and a request must satisfy every
+ * rule whose patterns match its URI.  Requests that match no rule are passed on.
+ * <p>
+ * The user's roles are read from the attribute named by the <code>roleAttribute</code> CAS property, which may hold a
+ * collection of roles or a comma delimited string, and compared according to the <code>ignoreCase</code> CAS property.
+ * The <code>uriRoleFilterPatternSyntax</code> &lt;init-param&gt; has the same meaning as for {@link UriFilter}.
+ * <p>
+ * So that a rule cannot be bypassed by an equivalent spelling of a protected URI, such as <code>//admin</code>,
+ * <code>/admin;x=1</code>, <code>/%61dmin</code> or <code>/public/../admin</code>, the patterns are always matched
+ * against the {@link UriNormalizer normalized} request URI, whatever the <code>normalizeUri</code> &lt;init-param&gt;.
+ * If <code>normalizeUri</code> is <code>true</code> the patterns are case sensitive and must be written in lower case,
+ * as for {@link UriFilter}, otherwise they are matched ignoring case.
+ * <p>
+ * This filter needs to be configured in the chain so that it executes after both the authentication and the validation
+ * filters.  An example of usage is shown in the following web.xml fragment,
+ * </p>
+ * <pre>
+     &lt;filter&gt;
+         &lt;filter-name&gt;CAS Role Authorization Filter&lt;/filter-name&gt;
+         &lt;filter-class&gt;au.org.ala.cas.client.RoleAuthorizationFilter&lt;/filter-class&gt;
+         &lt;init-param&gt;
+             &lt;param-name&gt;uriRoleFilterPattern&lt;/param-name&gt;
+             &lt;param-value&gt;
+                 /admin/.*, /alaAdmin.* = ROLE_ADMIN
+                 /edit/.* = ROLE_EDITOR, ROLE_ADMIN
+             &lt;/param-value&gt;
+         &lt;/init-param&gt;
+         &lt;init-param&gt;
+             &lt;param-name&gt;roleAttribute&lt;/param-name&gt;
+             &lt;param-value&gt;role&lt;/param-value&gt;
+         &lt;/init-param&gt;
+     &lt;/filter&gt;
+ * </pre>
+ */
+public class RoleAuthorizationFilter extends AbstractConfigurationFilter {
+
+    public static final String URI_ROLE_FILTER_PATTERN = "uriRoleFilterPattern";
+
+    private List<Rule> rules;
+    /** Name of the attribute used to answer role membership queries */
+    private String roleAttribute;
+    /** Whether or not to ignore case in role membership queries */
+    private boolean ignoreCase;
+
+    public void init(final FilterConfig filterConfig) throws ServletException {
+        super.init(filterConfig);
+        this.roleAttribute = getString(ConfigurationKeys.ROLE_ATTRIBUTE);
+        this.ignoreCase = getBoolean(ConfigurationKeys.IGNORE_CASE);
+        if (CommonUtils.isBlank(roleAttribute)) {
+            logger.warn("No roleAttribute configured, all requests matching a {} rule will be rejected", URI_ROLE_FILTER_PATTERN);
+        }
+
+        String contextPath = filterConfig.getServletContext().getInitParameter("contextPath");
+        if (contextPath == null) {
+            contextPath = filterConfig.getServletContext().getContextPath();
+        }
+        // The request URI is always normalized, the option only decides whether the patterns are case sensitive
+        final boolean normalizeUri = "true".equals(filterConfig.getInitParameter(UriFilter.NORMALIZE_URI));
+        contextPath = UriNormalizer.normalize(contextPath);
+
+        PatternMatchingUtils.Syntax syntax = PatternMatchingUtils.Syntax.forName(
+                filterConfig.getInitParameter(URI_ROLE_FILTER_PATTERN + UriFilter.PATTERN_SYNTAX_SUFFIX));
+        this.rules = parseRules(filterConfig.getInitParameter(URI_ROLE_FILTER_PATTERN), contextPath, syntax, !normalizeUri);
+        logger.debug("URI role rules = {}", rules);
+    }
+
+    public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse,
+                         final FilterChain filterChain) throws IOException, ServletException {
+        final HttpServletRequest request = (HttpServletRequest) servletRequest;
+        final String requestUri = UriNormalizer.getNormalizedUri(request);
+
+        Object roles = null;
+        boolean rolesRetrieved = false;
+        for (int i = 0; i < rules.size(); i++) {
+            final Rule rule = rules.get(i);
+            if (!rule.patterns.matches(requestUri)) {
+                continue;
+            }
+
+            if (!rolesRetrieved) {
+                roles = retrieveRoles(request);
+                rolesRetrieved = true;
+            }
+            if (!rule.isSatisfiedBy(roles, ignoreCase)) {
+                logger.debug("Rejecting URI '{}' for user [{}] as it requires one of the roles {}", requestUri, request.getRemoteUser(), rule);
+                ((HttpServletResponse) servletResponse).sendError(HttpServletResponse.SC_FORBIDDEN);
+                return;
+            }
+        }
+
+        filterChain.doFilter(servletRequest, servletResponse);
+    }
+
+    public void destroy() {
+        // nothing to do
+    }
+
+    /**
+     * @return The role attribute value of the authenticated user, or null if the user is not authenticated
+     */
+    private Object retrieveRoles(final HttpServletRequest request) {
+        if (CommonUtils.isBlank(roleAttribute)) {
+            return null;
+        }
+
+        Principal principal = request.getUserPrincipal();
+        if (!(principal instanceof AttributePrincipal)) {
+            Assertion assertion = AuthenticationUtils.getAssertion(request);
+            principal = assertion == null ? null : assertion.getPrincipal();
+        }
+        return principal == null ? null : ((AttributePrincipal) principal).getAttributes().get(roleAttribute);
+    }
+
+    static List<Rule> parseRules(final String config, final String contextPath, final PatternMatchingUtils.Syntax syntax, final boolean caseInsensitive) {
+        List<Rule> rules = new ArrayList<Rule>();
+        if (CommonUtils.isBlank(config)) {
+            return rules;
+        }
+
+        for (String entry : config.split("[;\\r\\n]+")) {
+            if (CommonUtils.isBlank(entry)) {
+                continue;
+            }
+            int separator = entry.lastIndexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Missing '=' in " + URI_ROLE_FILTER_PATTERN + " entry: " + entry.trim());
+            }
+
+            List<String> roles = new ArrayList<String>();
+            for (String role : entry.substring(separator + 1).split(",")) {
+                if (CommonUtils.isNotBlank(role)) {
+                    roles.add(role.trim());
+                }
+            }
+            if (roles.isEmpty()) {
+                throw new IllegalArgumentException("No roles in " + URI_ROLE_FILTER_PATTERN + " entry: " + entry.trim());
+            }
+
+            String patterns = entry.substring(0, separator).trim();
+            rules.add(new Rule(PatternMatchingUtils.getPatternMatcher(contextPath, patterns, syntax, false, caseInsensitive),
+                    roles.toArray(new String[0])));
+        }
+        return rules;
+    }
+
+    /**
+     * A set of URI patterns and the roles, any one of which is required to access them.
+     */
+    static final class Rule {
+
+        final UriPatternMatcher patterns;
+        final String[] roles;
+
+        Rule(final UriPatternMatcher patterns, final String[] roles) {
+            this.patterns = patterns;
+            this.roles = roles;
+        }
+
+        /**
+         * Tests the user's roles without allocating, so that the check is cheap for every request.
+         *
+         * @param userRoles The role attribute value, either a collection of roles or a comma delimited string
+         * @param ignoreCase Whether to ignore case when comparing roles
+         * @return true if the user has one of the required roles
+         */
+        boolean isSatisfiedBy(final Object userRoles, final boolean ignoreCase) {
+            if (userRoles instanceof String) {
+                return containsRole((String) userRoles, ignoreCase);
+            } else if (userRoles instanceof List<?> && userRoles instanceof RandomAccess) {
+                final List<?> list = (List<?>) userRoles;
+                for (int i = 0; i < list.size(); i++) {
+                    if (list.get(i) != null && containsRole(list.get(i).toString(), ignoreCase)) {
+                        return true;
+                    }
+                }
+            } else if (userRoles instanceof Collection<?>) {
+                for (final Object role : (Collection<?>) userRoles) {
+                    if (role != null && containsRole(role.toString(), ignoreCase)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true if the comma delimited list of user roles contains one of the required roles
+         */
+        private boolean containsRole(final String userRoles, final boolean ignoreCase) {
+            int start = 0;
+            while (start <= userRoles.length()) {
+                int end = userRoles.indexOf(',', start);
+                if (end < 0) {
+                    end = userRoles.length();
+                }
+
+                int from = start;
+                int to = end;
+                while (from < to && Character.isWhitespace(userRoles.charAt(from))) {
+                    from++;
+                }
+                while (to > from && Character.isWhitespace(userRoles.charAt(to - 1))) {
+                    to--;
+                }
+                for (final String role : roles) {
+                    if (role.length() == to - from && userRoles.regionMatches(ignoreCase, from, role, 0, role.length())) {
+                        return true;
+                    }
+                }
+                start = end + 1;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return patterns.getPatterns() + " = " + Arrays.toString(roles);
+        }
+    }
+}
@@ -15,8 +15,15 @@
 package au.org.ala.cas.client;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
@@ -27,9 +34,14 @@ import jakarta.servlet.ServletResponse;
 import jakarta.servlet.http.HttpServletRequest;
 
 import org.apereo.cas.client.authentication.AuthenticationFilter;
+import org.apereo.cas.client.util.CommonUtils;
 
+import au.org.ala.cas.jfr.DelegateFilterEvent;
+import au.org.ala.cas.jfr.UriFilterRoutingEvent;
 import au.org.ala.cas.util.AuthenticationCookieUtils;
 import au.org.ala.cas.util.PatternMatchingUtils;
+import au.org.ala.cas.util.UriNormalizer;
+import au.org.ala.cas.util.UriPatternMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,15 +55,52 @@ import org.slf4j.LoggerFactory;
  *     <tr><th>Criterion</th><th>context-param</th><th>Required</th><th>Description</th></tr>
  *     <tr><td>URI exclusion</td><td>uriExclusionFilterPattern</td><td>No</td><td>URIs that should not be subject to CAS authentication</td></tr>
  *     <tr><td>URI inclusion</td><td>uriFilterPattern</td><td>No</td><td>URIs that are to be subject to CAS authentication</td></tr>
- *     <tr><td>Only if logged in</td><td>authenticateOnlyIfLoggedInFilterPattern</td><td>No</td><td>URIs that should be subject to CAS authentication only if logged in (indicated by the presence of the ALA-Auth cookie)</td></tr>
+ *     <tr><td>Only if logged in</td><td>authenticateOnlyIfLoggedInFilterPattern</td><td>No</td><td>URIs that should be subject to CAS authentication only if logged in (indicated by the presence of the ALA-Auth cookie, which must be validly signed if a cookie key is configured, see {@link AuthenticationCookieUtils})</td></tr>
  * </table>
  * <p>
  * The list of URI patterns is specified as a comma delimited list of regular expressions in a <code>&lt;context-param&gt;</code>.
  * <p>
+ * Alternatively, patterns may use the Ant/servlet style glob syntax described in {@link au.org.ala.cas.util.GlobUriPattern},
+ * e.g. <code>/static/&#42;&#42;</code> or <code>*.js</code>, which is matched in linear time without backtracking.  A
+ * whole list is parsed as globs by setting the <code>&lt;context-param&gt;</code> of the same name with the suffix
+ * <code>Syntax</code>, e.g. <code>uriExclusionFilterPatternSyntax</code>, to <code>glob</code>.  Individual patterns
+ * can be prefixed with <code>glob:</code> or <code>regex:</code> to mix both syntaxes in one list.
+ * <p>
  * So if a request's path matches one of the URI patterns then the filter specified by the <code>filterClass</code> &lt;init-param&gt; is invoked.
  * <p>
  * The <code>contextPath</code> from the <code>ServletContext</code> is prefixed to each URI pattern defined for each filter.
  * <p>
+ * Setting the <code>adaptivePatternOrdering</code> &lt;init-param&gt; to <code>true</code> counts the hits for each
+ * pattern and periodically re-orders each list so that the most frequently matching patterns are tried first.  The
+ * order in which the three lists are applied, and therefore the outcome for any request, is unchanged.
+ * <p>
+ * Setting the <code>normalizeUri</code> &lt;init-param&gt; to <code>true</code> matches the patterns against the
+ * {@link UriNormalizer normalized} request URI, i.e. without path parameters such as <code>;jsessionid</code>, with
+ * percent-encoding other than of slashes decoded, duplicate slashes collapsed, dot segments removed and in lower case.  The patterns are then case sensitive and
+ * must be written in lower case.  The normalized URI is stored in the {@link UriNormalizer#NORMALIZED_URI_ATTRIBUTE}
+ * request attribute so that it is only computed once per request.
+ * <p>
+ * Several virtual hosts served by the same webapp can each have their own routing table.  A pattern list for a host is
+ * given by a <code>&lt;context-param&gt;</code> named after the default list with the suffix <code>@</code> and the
+ * host name, e.g. <code>uriFilterPattern@spatial.ala.org.au</code>, and its syntax by e.g.
+ * <code>uriFilterPatternSyntax@spatial.ala.org.au</code>.  Lists that are not given for a host are inherited from the
+ * default lists, which also apply to requests for any other host.  The host is the server name of the request or, if
+ * the <code>trustForwardedHost</code> &lt;init-param&gt; is <code>true</code>, the first <code>X-Forwarded-Host</code>
+ * set by a proxy in front of the webapp.  Each request is only matched against the lists for its own host.
+ * <p>
+ * Setting the <code>diagnostics</code> &lt;init-param&gt; to <code>true</code> counts the hits for each pattern and
+ * list, times the filter specified by the <code>filterClass</code> &lt;init-param&gt; and publishes them, with the
+ * routing tables and an operation that explains how a URI would be routed, as a JMX MBean.  See
+ * {@link UriFilterDiagnosticsMBean}.
+ * <p>
+ * The first requests after a deploy can be warmed up for, without delaying the servlet container startup, by listing
+ * sample request URIs, relative to the <code>contextPath</code> and delimited by commas or white space, in the
+ * <code>warmUpUris</code> &lt;init-param&gt;.  A background thread then matches them against every pattern of every
+ * routing table until the JIT has compiled the matching code, without counting any hits.  Setting the
+ * <code>warmUpCasServerUrl</code> &lt;init-param&gt; to a URL of the CAS server, e.g. its login page, makes the same
+ * thread request it first, which warms up the JDK's HTTP and TLS client and caches the TLS session for the CAS ticket
+ * validation requests.  Progress is shown by the <code>WarmUpPasses</code> attribute of the diagnostics MBean.
+ * <p>
  * An example of usage is shown in the following web.xml fragment,
  * </p>
  * <pre>
@@ -90,12 +139,31 @@ public class UriFilter implements Filter {
     public static final String URI_FILTER_PATTERN = "uriFilterPattern";
     public static final String URI_EXCLUSION_FILTER_PATTERN = "uriExclusionFilterPattern";
     public static final String AUTHENTICATE_ONLY_IF_LOGGED_IN_FILTER_PATTERN = "authenticateOnlyIfLoggedInFilterPattern";
+    public static final String ADAPTIVE_PATTERN_ORDERING = "adaptivePatternOrdering";
+    public static final String NORMALIZE_URI = "normalizeUri";
+    public static final String PATTERN_SYNTAX_SUFFIX = "Syntax";
+    public static final String HOST_SEPARATOR = "@";
+    public static final String TRUST_FORWARDED_HOST = "trustForwardedHost";
+    public static final String X_FORWARDED_HOST = "X-Forwarded-Host";
+    public static final String DIAGNOSTICS = "diagnostics";
+    public static final String WARM_UP_URIS = "warmUpUris";
+    public static final String WARM_UP_CAS_SERVER_URL = "warmUpCasServerUrl";
 
     private Filter filter;
     private String contextPath;
-    private List<Pattern> uriInclusionPatterns;
-    private List<Pattern> authOnlyIfLoggedInPatterns;
-    private List<Pattern> uriExclusionPatterns;
+    /** Routing table for requests to hosts without their own */
+    private RoutingTable defaultRoutingTable;
+    /** Routing tables by lower case host name */
+    private Map<String, RoutingTable> hostRoutingTables = Collections.emptyMap();
+    /** Whether to route requests by the X-Forwarded-Host header rather than the server name */
+    private boolean trustForwardedHost = false;
+    /** Routing diagnostics, or null if disabled */
+    private UriFilterDiagnostics diagnostics;
+    /** Background warm-up and its thread, or null if not configured */
+    private UriFilterWarmUp warmUp;
+    private Thread warmUpThread;
+    /** Whether patterns are matched against the normalized rather than the raw request URI */
+    private boolean normalizeUri = false;
     /** Stores whether or not CAS has been disabled allows for web.xml to exist for the filter but no config  */
     private boolean disabled =false;
 
@@ -117,35 +185,40 @@ public class UriFilter implements Filter {
                 logger.warn("Overriding ServletContext contextPath: {} with ServletContext init-param value: {}", filterConfig.getServletContext().getContextPath(), this.contextPath);
             }
 
-            //
-            // Get URI inclusion filter patterns
-            //
-            String includedUrlPattern = filterConfig.getServletContext().getInitParameter(URI_FILTER_PATTERN);
-            if (includedUrlPattern == null) {
-                includedUrlPattern = "";
+            boolean adaptive = "true".equals(filterConfig.getInitParameter(ADAPTIVE_PATTERN_ORDERING));
+            logger.debug("Adaptive pattern ordering = {}", adaptive);
+
+            this.normalizeUri = "true".equals(filterConfig.getInitParameter(NORMALIZE_URI));
+            if (this.normalizeUri) {
+                this.contextPath = UriNormalizer.normalize(this.contextPath);
+                logger.debug("Matching normalized URIs with context path: {}", this.contextPath);
             }
-            logger.debug("Included URI Pattern = '" + includedUrlPattern + "'");
-            this.uriInclusionPatterns = PatternMatchingUtils.getPatternList(contextPath, includedUrlPattern);
-    
+
             //
-            // Get URI exclusion filter patterns
+            // Get URI inclusion, exclusion and Authenticate Only if Logged in filter patterns
             //
-            String excludedUrlPattern = filterConfig.getServletContext().getInitParameter(URI_EXCLUSION_FILTER_PATTERN);
-            if (excludedUrlPattern == null) {
-                excludedUrlPattern = "";
-            }
-            logger.debug("Excluded URI Pattern = '{}'", excludedUrlPattern);
-            this.uriExclusionPatterns = PatternMatchingUtils.getPatternList(contextPath, excludedUrlPattern);
-    
+            boolean diagnostics = "true".equals(filterConfig.getInitParameter(DIAGNOSTICS));
+            this.defaultRoutingTable = new RoutingTable(
+                    getPatternMatcher(filterConfig, URI_FILTER_PATTERN, adaptive),
+                    getPatternMatcher(filterConfig, URI_EXCLUSION_FILTER_PATTERN, adaptive),
+                    getPatternMatcher(filterConfig, AUTHENTICATE_ONLY_IF_LOGGED_IN_FILTER_PATTERN, adaptive),
+                    diagnostics);
+
             //
-            // Get Authenticate Only if Logged in filter patterns
+            // Get the routing tables of individual hosts
             //
-            String authOnlyIfLoggedInPattern = filterConfig.getServletContext().getInitParameter(AUTHENTICATE_ONLY_IF_LOGGED_IN_FILTER_PATTERN);
-            if (authOnlyIfLoggedInPattern == null) {
-                authOnlyIfLoggedInPattern = "";
+            this.trustForwardedHost = "true".equals(filterConfig.getInitParameter(TRUST_FORWARDED_HOST));
+            Map<String, Map<String, String>> hostParams = getHostParams(filterConfig);
+            Map<String, RoutingTable> hostRoutingTables = new HashMap<String, RoutingTable>();
+            for (Map.Entry<String, Map<String, String>> host : hostParams.entrySet()) {
+                hostRoutingTables.put(host.getKey(), new RoutingTable(
+                        getHostPatternMatcher(filterConfig, host, URI_FILTER_PATTERN, adaptive, defaultRoutingTable.inclusion),
+                        getHostPatternMatcher(filterConfig, host, URI_EXCLUSION_FILTER_PATTERN, adaptive, defaultRoutingTable.exclusion),
+                        getHostPatternMatcher(filterConfig, host, AUTHENTICATE_ONLY_IF_LOGGED_IN_FILTER_PATTERN, adaptive, defaultRoutingTable.authOnlyIfLoggedIn),
+                        diagnostics));
             }
-            logger.debug("Authenticate Only if Logged in Pattern = '{}'", authOnlyIfLoggedInPattern);
-            this.authOnlyIfLoggedInPatterns = PatternMatchingUtils.getPatternList(contextPath, authOnlyIfLoggedInPattern);
+            this.hostRoutingTables = hostRoutingTables;
+            logger.debug("Routing tables for hosts {}, trust {} = {}", hostRoutingTables.keySet(), X_FORWARDED_HOST, trustForwardedHost);
     
             //
             // Get target filter class name
@@ -158,7 +231,170 @@ public class UriFilter implements Filter {
                 logger.error("Could not instantiate a new Filter with class {}", className, e);
             }
             filter.init(filterConfig);
+
+            if (diagnostics) {
+                this.diagnostics = new UriFilterDiagnostics(filterConfig.getServletContext().getContextPath(), filterConfig.getFilterName(), this);
+                this.diagnostics.register();
+            }
+
+            startWarmUp(filterConfig);
+        }
+    }
+
+    /**
+     * Starts the background warm-up of the pattern lists and CAS server connection, if configured.
+     */
+    private void startWarmUp(FilterConfig filterConfig) {
+        List<String> sampleUris = UriFilterWarmUp.parseSampleUris(filterConfig.getInitParameter(WARM_UP_URIS), contextPath);
+        String casServerUrl = filterConfig.getInitParameter(WARM_UP_CAS_SERVER_URL);
+        if (sampleUris.isEmpty() && CommonUtils.isBlank(casServerUrl)) {
+            return;
+        }
+
+        // Host routing tables share the default pattern lists that they do not override
+        Set<UriPatternMatcher> matchers = Collections.newSetFromMap(new IdentityHashMap<UriPatternMatcher, Boolean>());
+        for (RoutingTable routingTable : getRoutingTables()) {
+            for (Tier tier : Tier.values()) {
+                if (!routingTable.get(tier).isEmpty()) {
+                    matchers.add(routingTable.get(tier));
+                }
+            }
         }
+        logger.debug("Warming up {} pattern lists with sample URIs {} and CAS server URL {}", matchers.size(), sampleUris, casServerUrl);
+        this.warmUp = new UriFilterWarmUp(matchers, sampleUris, normalizeUri, CommonUtils.isBlank(casServerUrl) ? null : casServerUrl.trim());
+        this.warmUpThread = warmUp.start(filterConfig.getFilterName());
+    }
+
+    /**
+     * @return The default routing table followed by the routing tables of individual hosts
+     */
+    private List<RoutingTable> getRoutingTables() {
+        List<RoutingTable> routingTables = new ArrayList<RoutingTable>(hostRoutingTables.size() + 1);
+        routingTables.add(defaultRoutingTable);
+        routingTables.addAll(hostRoutingTables.values());
+        return routingTables;
+    }
+
+    private UriPatternMatcher getPatternMatcher(FilterConfig filterConfig, String patternParam, boolean adaptive) {
+        String patterns = filterConfig.getServletContext().getInitParameter(patternParam);
+        if (patterns == null) {
+            patterns = "";
+        }
+        String syntax = filterConfig.getServletContext().getInitParameter(patternParam + PATTERN_SYNTAX_SUFFIX);
+        logger.debug("{} = '{}', syntax = '{}'", patternParam, patterns, syntax);
+        return PatternMatchingUtils.getPatternMatcher(contextPath, patterns, PatternMatchingUtils.Syntax.forName(syntax), adaptive, !normalizeUri);
+    }
+
+    /**
+     * @param host The host name and its pattern params
+     * @return The host's pattern list, or the default pattern list if the host does not have one
+     */
+    private UriPatternMatcher getHostPatternMatcher(FilterConfig filterConfig, Map.Entry<String, Map<String, String>> host, String patternParam, boolean adaptive, UriPatternMatcher defaultPatterns) {
+        String patterns = host.getValue().get(patternParam);
+        if (patterns == null) {
+            return defaultPatterns;
+        }
+        String syntax = host.getValue().get(patternParam + PATTERN_SYNTAX_SUFFIX);
+        if (syntax == null) {
+            syntax = filterConfig.getServletContext().getInitParameter(patternParam + PATTERN_SYNTAX_SUFFIX);
+        }
+        logger.debug("{}{}{} = '{}', syntax = '{}'", patternParam, HOST_SEPARATOR, host.getKey(), patterns, syntax);
+        return PatternMatchingUtils.getPatternMatcher(contextPath, patterns, PatternMatchingUtils.Syntax.forName(syntax), adaptive, !normalizeUri);
+    }
+
+    /**
+     * @return The pattern and syntax context-params for each host, by lower case host name and then by the name of the
+     * default context-param
+     */
+    private static Map<String, Map<String, String>> getHostParams(FilterConfig filterConfig) {
+        Map<String, Map<String, String>> hostParams = new HashMap<String, Map<String, String>>();
+        Enumeration<String> names = filterConfig.getServletContext().getInitParameterNames();
+        while (names != null && names.hasMoreElements()) {
+            String name = names.nextElement();
+            int separator = name.indexOf(HOST_SEPARATOR);
+            if (separator < 0 || !isPatternParam(name.substring(0, separator))) {
+                continue;
+            }
+            String host = name.substring(separator + HOST_SEPARATOR.length()).trim().toLowerCase(Locale.ROOT);
+            if (host.isEmpty()) {
+                continue;
+            }
+            Map<String, String> params = hostParams.get(host);
+            if (params == null) {
+                params = new HashMap<String, String>();
+                hostParams.put(host, params);
+            }
+            params.put(name.substring(0, separator), filterConfig.getServletContext().getInitParameter(name));
+        }
+        return hostParams;
+    }
+
+    private static boolean isPatternParam(String name) {
+        return name.equals(URI_FILTER_PATTERN) || name.equals(URI_EXCLUSION_FILTER_PATTERN) || name.equals(AUTHENTICATE_ONLY_IF_LOGGED_IN_FILTER_PATTERN)
+                || name.equals(URI_FILTER_PATTERN + PATTERN_SYNTAX_SUFFIX) || name.equals(URI_EXCLUSION_FILTER_PATTERN + PATTERN_SYNTAX_SUFFIX)
+                || name.equals(AUTHENTICATE_ONLY_IF_LOGGED_IN_FILTER_PATTERN + PATTERN_SYNTAX_SUFFIX);
+    }
+
+    /**
+     * @return The routing table for the host the request was made to
+     */
+    private RoutingTable getRoutingTable(HttpServletRequest request) {
+        if (hostRoutingTables.isEmpty()) {
+            return defaultRoutingTable;
+        }
+        String host = null;
+        if (trustForwardedHost) {
+            host = getForwardedHost(request.getHeader(X_FORWARDED_HOST));
+        }
+        if (host == null) {
+            host = request.getServerName();
+        }
+        return getRoutingTable(host);
+    }
+
+    /**
+     * @param host The host name, may be null
+     * @return The routing table for the host
+     */
+    RoutingTable getRoutingTable(String host) {
+        RoutingTable routingTable = host == null ? null : hostRoutingTables.get(host);
+        if (routingTable == null && host != null) {
+            // Only allocate a lower case copy if the fast lookup missed
+            routingTable = hostRoutingTables.get(host.toLowerCase(Locale.ROOT));
+        }
+        return routingTable == null ? defaultRoutingTable : routingTable;
+    }
+
+    /**
+     * @param header The X-Forwarded-Host header, which may hold a comma delimited list of hosts with ports
+     * @return The first host in the header without its port, or null if there is none
+     */
+    static String getForwardedHost(String header) {
+        if (header == null) {
+            return null;
+        }
+        int end = header.indexOf(',');
+        if (end < 0) {
+            end = header.length();
+        }
+        int start = 0;
+        while (start < end && Character.isWhitespace(header.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(header.charAt(end - 1))) {
+            end--;
+        }
+        if (start < end && header.charAt(start) == '[') {
+            // IPv6 literal
+            int bracket = header.indexOf(']', start);
+            end = bracket < 0 || bracket >= end ? end : bracket + 1;
+        } else {
+            int colon = header.indexOf(':', start);
+            if (colon >= 0 && colon < end) {
+                end = colon;
+            }
+        }
+        return start < end ? header.substring(start, end) : null;
     }
 
     /* (non-Javadoc)
@@ -167,34 +403,55 @@ public class UriFilter implements Filter {
     public void doFilter(ServletRequest request, ServletResponse response,
             FilterChain chain) throws IOException, ServletException {
         if(!disabled){
-            String requestUri = ((HttpServletRequest) request).getRequestURI();
+            UriFilterRoutingEvent routingEvent = new UriFilterRoutingEvent();
+            routingEvent.begin();
+            String requestUri = normalizeUri ? UriNormalizer.getNormalizedUri((HttpServletRequest) request) : ((HttpServletRequest) request).getRequestURI();
+            RoutingTable routingTable = getRoutingTable((HttpServletRequest) request);
             if (filter instanceof AuthenticationFilter) {
                 logger.debug("Request Uri = '{}'", requestUri);
             }
 
-            if (PatternMatchingUtils.matches(requestUri, uriExclusionPatterns)) {
+            int index;
+            if ((index = routingTable.exclusion.indexOf(requestUri)) >= 0) {
+                if (routingTable.stats != null) {
+                    routingTable.stats.recordHit(Tier.EXCLUSION, index);
+                }
+                commitRouting(routingEvent, requestUri, Tier.EXCLUSION, index, false);
                 if (filter instanceof AuthenticationFilter) {
                     logger.debug("Ignoring URI because it matches {}", URI_EXCLUSION_FILTER_PATTERN);
                 } else {
                     logger.debug("No action taken as matches {} for {}", URI_EXCLUSION_FILTER_PATTERN, requestUri);
                 }
                 chain.doFilter(request, response);
-            } else if (PatternMatchingUtils.matches(requestUri, uriInclusionPatterns)) {
+            } else if ((index = routingTable.inclusion.indexOf(requestUri)) >= 0) {
+                if (routingTable.stats != null) {
+                    routingTable.stats.recordHit(Tier.INCLUSION, index);
+                }
+                commitRouting(routingEvent, requestUri, Tier.INCLUSION, index, true);
                 if (filter instanceof AuthenticationFilter) {
                     logger.debug("Forwarding URI '{}' to CAS authentication filters because it matches {}", requestUri, URI_FILTER_PATTERN);
                 } else {
                     logger.debug("Forwarding URI '{}' to {} filter because it matches {}", requestUri, filter.getClass().getName(), URI_FILTER_PATTERN);
                 }
-                filter.doFilter(request, response, chain);
-            } else if (PatternMatchingUtils.matches(requestUri, authOnlyIfLoggedInPatterns) &&
+                doDelegateFilter(request, response, chain, requestUri);
+            } else if ((index = routingTable.authOnlyIfLoggedIn.indexOf(requestUri)) >= 0 &&
                         AuthenticationCookieUtils.isUserLoggedIn((HttpServletRequest) request)) {
+                if (routingTable.stats != null) {
+                    routingTable.stats.recordHit(Tier.AUTHENTICATE_ONLY_IF_LOGGED_IN, index);
+                }
+                commitRouting(routingEvent, requestUri, Tier.AUTHENTICATE_ONLY_IF_LOGGED_IN, index, true);
                 if (filter instanceof AuthenticationFilter) {
                     logger.debug("Forwarding URI '{}' to CAS authentication filters because it matches {}  and ALA-Auth cookie exists", requestUri, AUTHENTICATE_ONLY_IF_LOGGED_IN_FILTER_PATTERN);
                 } else {
                     logger.debug("Forwarding URI '{}' to {} filter because it matches {} and ALA-Auth cookie exists", requestUri, filter.getClass().getName(), AUTHENTICATE_ONLY_IF_LOGGED_IN_FILTER_PATTERN);
                 }
-                filter.doFilter(request, response, chain);
+                doDelegateFilter(request, response, chain, requestUri);
             } else {
+                if (routingTable.stats != null) {
+                    routingTable.stats.recordMiss(index);
+                }
+                // A match of the authenticate only if logged in patterns without the ALA-Auth cookie is not forwarded
+                commitRouting(routingEvent, requestUri, index >= 0 ? Tier.AUTHENTICATE_ONLY_IF_LOGGED_IN : null, index, false);
                 logger.debug("No action taken - no matching pattern found for {}", requestUri);
                 chain.doFilter(request, response);
             }
@@ -204,7 +461,128 @@ public class UriFilter implements Filter {
         }
     }
 
+    RoutingTable getDefaultRoutingTable() {
+        return defaultRoutingTable;
+    }
+
+    Map<String, RoutingTable> getHostRoutingTables() {
+        return hostRoutingTables;
+    }
+
+    boolean isNormalizeUri() {
+        return normalizeUri;
+    }
+
+    Filter getFilter() {
+        return filter;
+    }
+
+    Thread getWarmUpThread() {
+        return warmUpThread;
+    }
+
+    /**
+     * @return The number of completed warm-up passes over the sample URIs, or -1 if there is no warm-up
+     */
+    int getWarmUpPasses() {
+        return warmUp == null ? -1 : warmUp.getPasses();
+    }
+
+    /**
+     * Commits a routing event, if it is enabled, before the request is handled.
+     *
+     * @param tier The pattern list that matched, or null if none did
+     */
+    private static void commitRouting(UriFilterRoutingEvent event, String requestUri, Tier tier, int index, boolean forwarded) {
+        if (event.shouldCommit()) {
+            event.uri = requestUri;
+            event.tier = tier == null ? "none" : tier.param;
+            event.patternIndex = index;
+            event.forwarded = forwarded;
+            event.commit();
+        }
+    }
+
+    /**
+     * Invokes the delegate filter, timing it if diagnostics are enabled.
+     */
+    private void doDelegateFilter(ServletRequest request, ServletResponse response,
+            FilterChain chain, String requestUri) throws IOException, ServletException {
+        DelegateFilterEvent delegateEvent = new DelegateFilterEvent();
+        delegateEvent.begin();
+        try {
+            if (diagnostics == null) {
+                filter.doFilter(request, response, chain);
+                return;
+            }
+            UriFilterDiagnostics.TimedFilterChain timedChain = new UriFilterDiagnostics.TimedFilterChain(chain);
+            long start = System.nanoTime();
+            try {
+                filter.doFilter(request, response, timedChain);
+            } finally {
+                diagnostics.recordDelegate(System.nanoTime() - start - timedChain.getNanos());
+            }
+        } finally {
+            if (delegateEvent.shouldCommit()) {
+                delegateEvent.filterClass = filter.getClass().getName();
+                delegateEvent.uri = requestUri;
+                delegateEvent.commit();
+            }
+        }
+    }
+
     public void destroy() {
+        if (warmUpThread != null) {
+            warmUpThread.interrupt();
+        }
+        if (diagnostics != null) {
+            diagnostics.unregister();
+        }
         filter.destroy();
     }
+
+    /**
+     * The pattern lists of a routing table, in the order they are applied.
+     */
+    enum Tier {
+        EXCLUSION(URI_EXCLUSION_FILTER_PATTERN),
+        INCLUSION(URI_FILTER_PATTERN),
+        AUTHENTICATE_ONLY_IF_LOGGED_IN(AUTHENTICATE_ONLY_IF_LOGGED_IN_FILTER_PATTERN);
+
+        final String param;
+
+        Tier(String param) {
+            this.param = param;
+        }
+    }
+
+    /**
+     * The pattern lists that decide how requests to one host are handled.
+     */
+    static final class RoutingTable {
+
+        final UriPatternMatcher inclusion;
+        final UriPatternMatcher exclusion;
+        final UriPatternMatcher authOnlyIfLoggedIn;
+        /** Hit counters, or null if diagnostics are disabled */
+        final UriFilterDiagnostics.RoutingStats stats;
+
+        RoutingTable(UriPatternMatcher inclusion, UriPatternMatcher exclusion, UriPatternMatcher authOnlyIfLoggedIn, boolean diagnostics) {
+            this.inclusion = inclusion;
+            this.exclusion = exclusion;
+            this.authOnlyIfLoggedIn = authOnlyIfLoggedIn;
+            this.stats = diagnostics ? new UriFilterDiagnostics.RoutingStats(this) : null;
+        }
+
+        UriPatternMatcher get(Tier tier) {
+            switch (tier) {
+                case EXCLUSION:
+                    return exclusion;
+                case INCLUSION:
+                    return inclusion;
+                default:
+                    return authOnlyIfLoggedIn;
+            }
+        }
+    }
 }
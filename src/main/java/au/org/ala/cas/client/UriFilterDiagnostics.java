@@ -0,0 +1,333 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.client;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.org.ala.cas.util.AuthenticationCookieUtils;
+import au.org.ala.cas.util.UriNormalizer;
+import au.org.ala.cas.util.UriPattern;
+import au.org.ala.cas.util.UriPatternMatcher;
+
+/**
+ * The routing diagnostics of a {@link UriFilter}.  The request path only increments striped counters, everything else
+ * is computed when the MBean is read.
+ */
+public class UriFilterDiagnostics implements UriFilterDiagnosticsMBean {
+
+    private final static Logger logger = LoggerFactory.getLogger(UriFilterDiagnostics.class);
+
+    public static final String OBJECT_NAME_DOMAIN = "au.org.ala.cas";
+
+    private static final String DEFAULT_ROUTING_TABLE = "default";
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final UriFilter uriFilter;
+    private final ObjectName objectName;
+
+    private final LongAdder delegateInvocations = new LongAdder();
+    private final LongAdder delegateNanos = new LongAdder();
+    private final LongAccumulator delegateMaxNanos = new LongAccumulator(Math::max, 0);
+
+    UriFilterDiagnostics(final String contextPath, final String filterName, final UriFilter uriFilter) {
+        this.uriFilter = uriFilter;
+        this.objectName = createObjectName(contextPath, filterName);
+    }
+
+    private static ObjectName createObjectName(final String contextPath, final String filterName) {
+        try {
+            return new ObjectName(OBJECT_NAME_DOMAIN + ":type=UriFilter,context=" + ObjectName.quote(contextPath == null ? "" : contextPath)
+                    + ",name=" + ObjectName.quote(filterName == null ? "UriFilter" : filterName));
+        } catch (final JMException e) {
+            throw new IllegalArgumentException("Invalid MBean name for filter " + filterName, e);
+        }
+    }
+
+    ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Registers the MBean with the platform MBean server, replacing any left over from a previous deployment.
+     */
+    void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            logger.info("Registered UriFilter diagnostics as {}", objectName);
+        } catch (final JMException e) {
+            logger.warn("Unable to register UriFilter diagnostics as {}", objectName, e);
+        }
+    }
+
+    void unregister() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (final JMException e) {
+            logger.warn("Unable to unregister UriFilter diagnostics {}", objectName, e);
+        }
+    }
+
+    void recordDelegate(final long nanos) {
+        delegateInvocations.increment();
+        delegateNanos.add(nanos);
+        delegateMaxNanos.accumulate(nanos);
+    }
+
+    public String[] getRoutingTable() {
+        final List<String> lines = new ArrayList<String>();
+        for (final Map.Entry<String, UriFilter.RoutingTable> table : getRoutingTables().entrySet()) {
+            for (final UriFilter.Tier tier : UriFilter.Tier.values()) {
+                final List<UriPattern> patterns = table.getValue().get(tier).getPatterns();
+                for (int i = 0; i < patterns.size(); i++) {
+                    lines.add(table.getKey() + " " + describeList(table.getKey(), table.getValue(), tier) + "[" + i + "] " + patterns.get(i).pattern());
+                }
+            }
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    public String[] getTierHits() {
+        final List<String> lines = new ArrayList<String>();
+        for (final Map.Entry<String, UriFilter.RoutingTable> table : getRoutingTables().entrySet()) {
+            final RoutingStats stats = table.getValue().stats;
+            for (final UriFilter.Tier tier : UriFilter.Tier.values()) {
+                lines.add(table.getKey() + " " + describeList(table.getKey(), table.getValue(), tier) + " = " + stats.tierHits[tier.ordinal()].sum());
+            }
+            lines.add(table.getKey() + " " + UriFilter.AUTHENTICATE_ONLY_IF_LOGGED_IN_FILTER_PATTERN + " not logged in = " + stats.notLoggedIn.sum());
+            lines.add(table.getKey() + " no match = " + stats.unmatched.sum());
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    public String[] getPatternHits() {
+        final List<String> lines = new ArrayList<String>();
+        for (final Map.Entry<String, UriFilter.RoutingTable> table : getRoutingTables().entrySet()) {
+            final RoutingStats stats = table.getValue().stats;
+            for (final UriFilter.Tier tier : UriFilter.Tier.values()) {
+                final List<UriPattern> patterns = table.getValue().get(tier).getPatterns();
+                for (int i = 0; i < patterns.size(); i++) {
+                    lines.add(table.getKey() + " " + describeList(table.getKey(), table.getValue(), tier) + "[" + i + "] "
+                            + patterns.get(i).pattern() + " = " + stats.patternHits[tier.ordinal()][i].sum());
+                }
+            }
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    public long getDelegateInvocations() {
+        return delegateInvocations.sum();
+    }
+
+    public double getDelegateTotalMillis() {
+        return delegateNanos.sum() / NANOS_PER_MILLI;
+    }
+
+    public double getDelegateMeanMillis() {
+        final long invocations = delegateInvocations.sum();
+        return invocations == 0 ? 0 : delegateNanos.sum() / NANOS_PER_MILLI / invocations;
+    }
+
+    public double getDelegateMaxMillis() {
+        return delegateMaxNanos.get() / NANOS_PER_MILLI;
+    }
+
+    public int getWarmUpPasses() {
+        return uriFilter.getWarmUpPasses();
+    }
+
+    public String explain(final String uri) {
+        return explainForHost(null, uri);
+    }
+
+    public String explainForHost(final String host, final String uri) {
+        final UriFilter.RoutingTable table = uriFilter.getRoutingTable(host);
+        final String tableName = table == uriFilter.getDefaultRoutingTable() ? DEFAULT_ROUTING_TABLE : host.toLowerCase(Locale.ROOT);
+        final String matchedUri = uriFilter.isNormalizeUri() ? UriNormalizer.normalize(uri) : uri;
+        final String delegate = uriFilter.getFilter() == null ? "the delegate filter" : uriFilter.getFilter().getClass().getName();
+
+        final StringBuilder explanation = new StringBuilder();
+        explanation.append("Routing table: ").append(tableName).append('\n');
+        explanation.append("Matched URI: ").append(matchedUri).append(uriFilter.isNormalizeUri() ? " (normalized)" : "").append('\n');
+
+        UriFilter.Tier decidingTier = null;
+        for (final UriFilter.Tier tier : UriFilter.Tier.values()) {
+            final List<UriPattern> patterns = table.get(tier).getPatterns();
+            // The pattern the filter would match first, which is not the first in configuration order if adaptive
+            final int index = table.get(tier).find(matchedUri);
+            final String list = describeList(tableName, table, tier);
+            if (index < 0) {
+                explanation.append("No match in ").append(list).append('\n');
+            } else if (decidingTier != null) {
+                explanation.append("Also matches ").append(list).append('[').append(index).append("] ").append(patterns.get(index).pattern())
+                        .append(", which is not applied because ").append(decidingTier.param).append(" takes precedence\n");
+            } else {
+                decidingTier = tier;
+                explanation.append("Matches ").append(list).append('[').append(index).append("] ").append(patterns.get(index).pattern()).append('\n');
+            }
+        }
+
+        if (decidingTier == UriFilter.Tier.EXCLUSION) {
+            explanation.append("Result: passed down the filter chain without invoking ").append(delegate);
+        } else if (decidingTier == UriFilter.Tier.INCLUSION) {
+            explanation.append("Result: forwarded to ").append(delegate);
+        } else if (decidingTier == UriFilter.Tier.AUTHENTICATE_ONLY_IF_LOGGED_IN) {
+            explanation.append("Result: forwarded to ").append(delegate).append(" if the ").append(AuthenticationCookieUtils.ALA_AUTH_COOKIE)
+                    .append(AuthenticationCookieUtils.isSignedCookieEnabled() ? " cookie is validly signed" : " cookie is present")
+                    .append(", otherwise passed down the filter chain");
+        } else {
+            explanation.append("Result: passed down the filter chain without invoking ").append(delegate);
+        }
+        return explanation.toString();
+    }
+
+    public void reset() {
+        for (final UriFilter.RoutingTable table : getRoutingTables().values()) {
+            table.stats.reset();
+        }
+        delegateInvocations.reset();
+        delegateNanos.reset();
+        delegateMaxNanos.reset();
+    }
+
+    /**
+     * @return The routing tables by name, with the default table first
+     */
+    private Map<String, UriFilter.RoutingTable> getRoutingTables() {
+        final Map<String, UriFilter.RoutingTable> tables = new TreeMap<String, UriFilter.RoutingTable>(uriFilter.getHostRoutingTables());
+        final Map<String, UriFilter.RoutingTable> ordered = new LinkedHashMap<String, UriFilter.RoutingTable>();
+        ordered.put(DEFAULT_ROUTING_TABLE, uriFilter.getDefaultRoutingTable());
+        ordered.putAll(tables);
+        return ordered;
+    }
+
+    /**
+     * @return The name of the context-param that the list of the table came from
+     */
+    private String describeList(final String tableName, final UriFilter.RoutingTable table, final UriFilter.Tier tier) {
+        if (table == uriFilter.getDefaultRoutingTable()) {
+            return tier.param;
+        }
+        final UriPatternMatcher defaultPatterns = uriFilter.getDefaultRoutingTable().get(tier);
+        return table.get(tier) == defaultPatterns ? tier.param + " (inherited)" : tier.param + UriFilter.HOST_SEPARATOR + tableName;
+    }
+
+    /**
+     * The hit counters of a routing table.
+     */
+    static final class RoutingStats {
+
+        final LongAdder[] tierHits;
+        final LongAdder[][] patternHits;
+        final LongAdder notLoggedIn = new LongAdder();
+        final LongAdder unmatched = new LongAdder();
+
+        RoutingStats(final UriFilter.RoutingTable table) {
+            final UriFilter.Tier[] tiers = UriFilter.Tier.values();
+            this.tierHits = new LongAdder[tiers.length];
+            this.patternHits = new LongAdder[tiers.length][];
+            for (final UriFilter.Tier tier : tiers) {
+                tierHits[tier.ordinal()] = new LongAdder();
+                final LongAdder[] hits = new LongAdder[table.get(tier).getPatterns().size()];
+                for (int i = 0; i < hits.length; i++) {
+                    hits[i] = new LongAdder();
+                }
+                patternHits[tier.ordinal()] = hits;
+            }
+        }
+
+        void recordHit(final UriFilter.Tier tier, final int index) {
+            tierHits[tier.ordinal()].increment();
+            patternHits[tier.ordinal()][index].increment();
+        }
+
+        /**
+         * @param authOnlyIfLoggedInIndex The index of the authenticate only if logged in pattern that matched, or -1
+         */
+        void recordMiss(final int authOnlyIfLoggedInIndex) {
+            if (authOnlyIfLoggedInIndex >= 0) {
+                notLoggedIn.increment();
+            } else {
+                unmatched.increment();
+            }
+        }
+
+        void reset() {
+            for (final LongAdder hits : tierHits) {
+                hits.reset();
+            }
+            for (final LongAdder[] hits : patternHits) {
+                for (final LongAdder hit : hits) {
+                    hit.reset();
+                }
+            }
+            notLoggedIn.reset();
+            unmatched.reset();
+        }
+    }
+
+    /**
+     * Measures the time spent in the rest of the filter chain, so that it can be excluded from the delegate timing.
+     */
+    static final class TimedFilterChain implements FilterChain {
+
+        private final FilterChain chain;
+        private long nanos;
+
+        TimedFilterChain(final FilterChain chain) {
+            this.chain = chain;
+        }
+
+        public void doFilter(final ServletRequest request, final ServletResponse response) throws IOException, ServletException {
+            final long start = System.nanoTime();
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        long getNanos() {
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.client;
+
+/**
+ * JMX view of how a {@link UriFilter} routes requests, registered as
+ * <code>au.org.ala.cas:type=UriFilter,context=&lt;context path&gt;,name=&lt;filter name&gt;</code> when the
+ * <code>diagnostics</code> &lt;init-param&gt; is <code>true</code>.
+ */
+public interface UriFilterDiagnosticsMBean {
+
+    /**
+     * @return One line per pattern: the routing table, the pattern list and index, and the pattern
+     */
+    String[] getRoutingTable();
+
+    /**
+     * @return One line per routing table and pattern list with the number of requests decided by that list, plus the
+     * requests that matched no list and those that matched the authenticate only if logged in list without being logged in
+     */
+    String[] getTierHits();
+
+    /**
+     * @return One line per pattern with the number of requests decided by that pattern
+     */
+    String[] getPatternHits();
+
+    long getDelegateInvocations();
+
+    /**
+     * @return The total time spent in the delegate filter, excluding the rest of the filter chain
+     */
+    double getDelegateTotalMillis();
+
+    double getDelegateMeanMillis();
+
+    double getDelegateMaxMillis();
+
+    /**
+     * @return The number of passes over the <code>warmUpUris</code> completed so far, or -1 if there is no warm-up
+     */
+    int getWarmUpPasses();
+
+    /**
+     * @param uri A request URI, including the context path
+     * @return How a request for the URI to a host without its own routing table would be routed, and why
+     */
+    String explain(String uri);
+
+    /**
+     * @param host The host the request is made to
+     * @param uri A request URI, including the context path
+     * @return How a request for the URI to the host would be routed, and why
+     */
+    String explainForHost(String host, String uri);
+
+    /**
+     * Resets the hit counters and delegate timings.
+     */
+    void reset();
+}
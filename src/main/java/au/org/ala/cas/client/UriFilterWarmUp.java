@@ -0,0 +1,163 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apereo.cas.client.util.CommonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.org.ala.cas.util.UriNormalizer;
+import au.org.ala.cas.util.UriPatternMatcher;
+
+/**
+ * Warms up a {@link UriFilter} on a background daemon thread, so that neither the servlet container startup nor the
+ * first requests pay for it.
+ * <p>
+ * The sample URIs are matched against every pattern of every routing table, enough times for the JIT to compile the
+ * matching code, without counting any hits.  If a CAS server URL is given, a request is made to it first, which loads
+ * the JDK's HTTP and TLS classes, resolves the server's host name and, for an https URL, leaves the TLS session in the
+ * default SSL context's session cache, so that the first ticket validation of the CAS filters can resume it rather
+ * than make a full handshake.  The connection itself is not expected to be reused, as the JDK closes idle keep-alive
+ * connections after about 5 seconds, well before the first ticket validation is likely.
+ */
+class UriFilterWarmUp implements Runnable {
+
+    private final static Logger logger = LoggerFactory.getLogger(UriFilterWarmUp.class);
+
+    /** Number of passes over the sample URIs, comfortably above the JIT compilation thresholds */
+    static final int ITERATIONS = 20000;
+    /** Upper bound on the time spent matching, in case there are many patterns or samples */
+    static final long TIME_LIMIT = TimeUnit.SECONDS.toNanos(10);
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final int READ_TIMEOUT = 10000;
+
+    private final List<UriPatternMatcher> matchers;
+    private final List<String> sampleUris;
+    private final boolean normalizeUri;
+    private final String casServerUrl;
+    private volatile int passes;
+
+    /**
+     * @param matchers The pattern lists to warm up
+     * @param sampleUris Sample request URIs, including the context path
+     * @param normalizeUri Whether the sample URIs are to be normalized first, as the requests would be
+     * @param casServerUrl URL of the CAS server to open a connection to, or null
+     */
+    UriFilterWarmUp(final Collection<UriPatternMatcher> matchers, final List<String> sampleUris, final boolean normalizeUri, final String casServerUrl) {
+        this.matchers = new ArrayList<UriPatternMatcher>(matchers);
+        this.sampleUris = sampleUris;
+        this.normalizeUri = normalizeUri;
+        this.casServerUrl = casServerUrl;
+    }
+
+    /**
+     * @param filterName Name of the filter, for the thread name
+     * @return The started warm-up thread
+     */
+    Thread start(final String filterName) {
+        final Thread thread = new Thread(this, "UriFilter-warm-up-" + filterName);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return thread;
+    }
+
+    public void run() {
+        if (casServerUrl != null) {
+            openConnection();
+        }
+        if (!sampleUris.isEmpty()) {
+            matchSamples();
+        }
+    }
+
+    /**
+     * @return The number of completed passes over the sample URIs
+     */
+    int getPasses() {
+        return passes;
+    }
+
+    private void matchSamples() {
+        final long start = System.nanoTime();
+        int matches = 0;
+        int pass = 0;
+        while (pass < ITERATIONS && !Thread.currentThread().isInterrupted() && System.nanoTime() - start < TIME_LIMIT) {
+            for (int i = 0; i < sampleUris.size(); i++) {
+                final String uri = normalizeUri ? UriNormalizer.normalize(sampleUris.get(i)) : sampleUris.get(i);
+                for (int j = 0; j < matchers.size(); j++) {
+                    matches += matchers.get(j).warmUp(uri);
+                }
+            }
+            passes = ++pass;
+        }
+        logger.debug("Warmed up {} pattern lists with {} sample URIs, {} passes and {} matches in {} ms", matchers.size(), sampleUris.size(),
+                pass, matches, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void openConnection() {
+        final long start = System.nanoTime();
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(casServerUrl).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            final int statusCode = connection.getResponseCode();
+            // Read the response to the end so that the connection is released cleanly, the TLS session stays cached
+            try (InputStream in = statusCode < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    final byte[] buffer = new byte[4096];
+                    while (in.read(buffer) >= 0) {
+                        // discard
+                    }
+                }
+            }
+            logger.debug("Opened connection to {}, response code {} in {} ms", casServerUrl, statusCode,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (final IOException e) {
+            logger.warn("Unable to open a connection to {}: {}", casServerUrl, e.getMessage());
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * @param config Comma or white space delimited sample URIs, relative to the context path
+     * @param contextPath The context path to prefix to each sample URI
+     * @return The sample URIs, including the context path
+     */
+    static List<String> parseSampleUris(final String config, final String contextPath) {
+        final List<String> sampleUris = new ArrayList<String>();
+        if (CommonUtils.isBlank(config)) {
+            return sampleUris;
+        }
+        for (final String uri : config.split("[,\\s]+")) {
+            if (!uri.isEmpty()) {
+                sampleUris.add((contextPath == null ? "" : contextPath) + (uri.startsWith("/") ? uri : "/" + uri));
+            }
+        }
+        return sampleUris;
+    }
+}
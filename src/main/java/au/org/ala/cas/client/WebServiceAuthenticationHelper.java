@@ -17,6 +17,8 @@ package au.org.ala.cas.client;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -24,6 +26,8 @@ import okhttp3.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import au.org.ala.cas.jfr.CasRestCallEvent;
+
 /**
  * <p>
  * Helper class that authenticates user credentials prior to invoking a web service that requires authentication.
@@ -33,6 +37,9 @@ import org.slf4j.LoggerFactory;
  * Invoking a web service using the invoke() method involves obtaining a CAS service ticket which is then passed to
  * the web service provider as a URI parameter.  The web service provider application then obtains the user attributes
  * via its CAS validation filter.
+ * <p>
+ * So that application startup does not stall when CAS is slow, the helper can instead be constructed without blocking,
+ * in which case the Ticket Granting Ticket is obtained on a background thread and the first invocations wait for it.
  * 
  * @author peterflemming
  *
@@ -43,7 +50,7 @@ public class WebServiceAuthenticationHelper {
 	private final static String CAS_CONTEXT = "/cas/v1/tickets/";
 	
 	private final String casServer;
-	private final String ticketGrantingTicket;
+	private final FutureTask<String> ticketGrantingTicket;
 
     final OkHttpClient client = new OkHttpClient();
 	
@@ -55,9 +62,29 @@ public class WebServiceAuthenticationHelper {
 	 * @param password  Password
 	 */
 	public WebServiceAuthenticationHelper(final String casServer, final String userName, final String password) {
+		this(casServer, userName, password, false);
+	}
+
+	/**
+	 * Constructor that authenticates the user credentials and obtains a CAS Ticket Granting ticket, optionally on a
+	 * background thread so that construction does not block.
+	 * 
+	 * @param casServer The CAS server URI
+	 * @param userName	User name
+	 * @param password  Password
+	 * @param background Whether to authenticate in the background, in which case invocations wait for it to finish
+	 */
+	public WebServiceAuthenticationHelper(final String casServer, final String userName, final String password, final boolean background) {
 		super();
 		this.casServer = casServer;
-		ticketGrantingTicket = getTicketGrantingTicket(casServer, userName, password);
+		ticketGrantingTicket = new FutureTask<String>(() -> getTicketGrantingTicket(casServer, userName, password));
+		if (background) {
+			Thread thread = new Thread(ticketGrantingTicket, "cas-ticket-granting");
+			thread.setDaemon(true);
+			thread.start();
+		} else {
+			ticketGrantingTicket.run();
+		}
 	}
 
 	/**
@@ -67,7 +94,7 @@ public class WebServiceAuthenticationHelper {
 	 * @return Web service response as a string
 	 */
 	public String invoke(final String serviceUrl) {
-		String serviceTicket = getServiceTicket(this.casServer, this.ticketGrantingTicket, serviceUrl);
+		String serviceTicket = getServiceTicket(this.casServer, getTicketGrantingTicket(), serviceUrl);
 		if (serviceTicket != null) {
 			return getServiceResponse(serviceUrl, serviceTicket);
 		} else {
@@ -75,6 +102,30 @@ public class WebServiceAuthenticationHelper {
 		}
 	}
 	
+	/**
+	 * @return Whether the Ticket Granting Ticket has been obtained, or the attempt to obtain it has failed
+	 */
+	public boolean isAuthenticationComplete() {
+		return ticketGrantingTicket.isDone();
+	}
+
+	/**
+	 * Waits for the authentication to finish if it is running in the background.
+	 * 
+	 * @return The Ticket Granting Ticket id, or null if authentication failed
+	 */
+	private String getTicketGrantingTicket() {
+		try {
+			return ticketGrantingTicket.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn("Interrupted waiting for the Ticket Granting Ticket from {}", casServer);
+		} catch (ExecutionException e) {
+			logger.warn("Exception obtaining the Ticket Granting Ticket from {}", casServer, e.getCause());
+		}
+		return null;
+	}
+
 	/**
 	 * Authenticates user credentials with CAS server and obtains a Ticket Granting ticket.
 	 * 
@@ -95,6 +146,8 @@ public class WebServiceAuthenticationHelper {
                 .post(formBody)
                 .build();
 
+		CasRestCallEvent event = new CasRestCallEvent();
+		event.begin();
 		try {
             Call call = client.newCall(request);
 
@@ -105,6 +158,7 @@ public class WebServiceAuthenticationHelper {
                 statusCode = httpResponse.code();
                 response = httpResponse.body().string();
             }
+            event.commit(CasRestCallEvent.TICKET_GRANTING_TICKET, server + CAS_CONTEXT, statusCode, response);
 
             switch (statusCode) {
                 case 201: {
@@ -127,6 +181,7 @@ public class WebServiceAuthenticationHelper {
 		}
 
 		catch (final IOException e) {
+			event.commit(CasRestCallEvent.TICKET_GRANTING_TICKET, server + CAS_CONTEXT, 0, null);
 			logger.warn("Exception calling {}", request.url(), e);
 		}
 
@@ -154,6 +209,8 @@ public class WebServiceAuthenticationHelper {
                 .post(formBody)
                 .build();
 
+        CasRestCallEvent event = new CasRestCallEvent();
+        event.begin();
         try {
             Call call = client.newCall(request);
 
@@ -164,6 +221,7 @@ public class WebServiceAuthenticationHelper {
                 statusCode = httpResponse.code();
                 response = httpResponse.body().string();
             }
+            event.commit(CasRestCallEvent.SERVICE_TICKET, server + CAS_CONTEXT, statusCode, response);
 
             switch (statusCode) {
 			case 200:
@@ -177,6 +235,7 @@ public class WebServiceAuthenticationHelper {
 		}
 
 		catch (final IOException e) {
+			event.commit(CasRestCallEvent.SERVICE_TICKET, server + CAS_CONTEXT, 0, null);
 			logger.warn("Exception calling {}", request.url(), e);
 		}
 
@@ -195,6 +254,8 @@ public class WebServiceAuthenticationHelper {
                 .url(url + "?ticket=" + serviceTicket)
                 .build();
 
+        CasRestCallEvent event = new CasRestCallEvent();
+        event.begin();
         try {
             Call call = client.newCall(request);
 
@@ -205,6 +266,7 @@ public class WebServiceAuthenticationHelper {
                 statusCode = httpResponse.code();
                 response = httpResponse.body().string();
             }
+            event.commit(CasRestCallEvent.SERVICE, url, statusCode, response);
 
             switch (statusCode) {
 			case 200:
@@ -218,6 +280,7 @@ public class WebServiceAuthenticationHelper {
 		}
 
 		catch (final IOException e) {
+			event.commit(CasRestCallEvent.SERVICE, url, 0, null);
 			logger.warn("Exception calling {}", request.url(), e);
 		}
 
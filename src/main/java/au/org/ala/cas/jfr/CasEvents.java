@@ -0,0 +1,65 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.jfr;
+
+/**
+ * Java Flight Recorder events for the CAS authentication flow.
+ * <p>
+ * Every event is disabled by default, and an event that is disabled costs no more than an unused object allocation,
+ * which the JIT eliminates, as its fields are only set once {@link jdk.jfr.Event#shouldCommit()} returns true.  The
+ * events are enabled by name in a recording, e.g. with <code>&lt;event name="au.org.ala.cas.UriFilterRouting"&gt;</code>
+ * and <code>&lt;setting name="enabled"&gt;true&lt;/setting&gt;</code> in a copy of the JDK's <code>profile.jfc</code>
+ * settings file, or programmatically with {@link jdk.jfr.Recording#enable(String)} and {@link #NAMES}.
+ */
+public final class CasEvents {
+
+    public static final String CATEGORY = "ALA CAS";
+    static final String PREFIX = "au.org.ala.cas.";
+
+    /** The names of all the events */
+    public static final String[] NAMES = {
+            UriFilterRoutingEvent.NAME,
+            DelegateFilterEvent.NAME,
+            CasRestCallEvent.NAME,
+            GatewayDecisionEvent.NAME
+    };
+
+    private CasEvents() {
+    }
+
+    /**
+     * @return The number of bytes in the UTF-8 encoding of the string, without encoding it, or 0 if it is null
+     */
+    static long utf8Length(final String string) {
+        if (string == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
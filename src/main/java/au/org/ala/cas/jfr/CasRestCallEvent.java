@@ -0,0 +1,77 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An HTTP call made by {@link au.org.ala.cas.client.WebServiceAuthenticationHelper} or
+ * {@link au.org.ala.cas.client.ProxyWebServiceHelper}.  Ticket ids are never recorded.
+ */
+@Name(CasRestCallEvent.NAME)
+@Label("CAS REST Call")
+@Category({ CasEvents.CATEGORY, "Web Service" })
+@Description("A CAS ticket request or an invocation of a CAS protected web service")
+@Enabled(false)
+@StackTrace(false)
+public final class CasRestCallEvent extends Event {
+
+    public static final String NAME = CasEvents.PREFIX + "RestCall";
+
+    public static final String TICKET_GRANTING_TICKET = "ticketGrantingTicket";
+    public static final String SERVICE_TICKET = "serviceTicket";
+    public static final String SERVICE = "service";
+
+    @Label("Call Type")
+    @Description("ticketGrantingTicket, serviceTicket or service")
+    public String callType;
+
+    @Label("URL")
+    @Description("The URL called, without any ticket")
+    public String url;
+
+    @Label("Status Code")
+    @Description("The HTTP status code, or 0 if the call failed")
+    public int statusCode;
+
+    @Label("Response Size")
+    @DataAmount
+    public long bytes;
+
+    /**
+     * Commits the event if it is enabled and exceeds its threshold.  The arguments are only examined if it does.
+     *
+     * @param callType The type of call
+     * @param url The URL called, without any ticket
+     * @param statusCode The HTTP status code, or 0 if the call failed
+     * @param response The response body, or null if the call failed
+     */
+    public void commit(final String callType, final String url, final int statusCode, final String response) {
+        if (shouldCommit()) {
+            this.callType = callType;
+            this.url = url;
+            this.statusCode = statusCode;
+            this.bytes = CasEvents.utf8Length(response);
+            commit();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An execution of the filter that a {@link au.org.ala.cas.client.UriFilter} delegates to, including the rest of the
+ * filter chain if the delegate passes the request on.
+ */
+@Name(DelegateFilterEvent.NAME)
+@Label("UriFilter Delegate")
+@Category({ CasEvents.CATEGORY, "UriFilter" })
+@Description("Execution of the filter a UriFilter forwards requests to")
+@Enabled(false)
+@StackTrace(false)
+public final class DelegateFilterEvent extends Event {
+
+    public static final String NAME = CasEvents.PREFIX + "DelegateFilter";
+
+    @Label("Filter Class")
+    public String filterClass;
+
+    @Label("URI")
+    public String uri;
+}
@@ -0,0 +1,56 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A decision of {@link au.org.ala.cas.client.AjaxAwareGatewayStorage}, either whether a request has already been
+ * gatewayed or whether to record that it is being gatewayed.
+ */
+@Name(GatewayDecisionEvent.NAME)
+@Label("CAS Gateway Decision")
+@Category({ CasEvents.CATEGORY, "Gateway" })
+@Description("A CAS gateway check or store by AjaxAwareGatewayStorage")
+@Enabled(false)
+@StackTrace(false)
+public final class GatewayDecisionEvent extends Event {
+
+    public static final String NAME = CasEvents.PREFIX + "GatewayDecision";
+
+    public static final String HAS_GATEWAYED_ALREADY = "hasGatewayedAlready";
+    public static final String STORE_GATEWAY_INFORMATION = "storeGatewayInformation";
+
+    @Label("Operation")
+    @Description("hasGatewayedAlready or storeGatewayInformation")
+    public String operation;
+
+    @Label("URI")
+    public String uri;
+
+    @Label("Ajax")
+    @Description("Whether the request was detected as an ajax request")
+    public boolean ajax;
+
+    @Label("Result")
+    @Description("Whether the request had already been gatewayed, or whether the gateway was stored")
+    public boolean result;
+}
@@ -0,0 +1,54 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A routing decision of a {@link au.org.ala.cas.client.UriFilter}, timed from the start of the request until the
+ * request is either forwarded to the delegate filter or passed down the chain.
+ */
+@Name(UriFilterRoutingEvent.NAME)
+@Label("UriFilter Routing")
+@Category({ CasEvents.CATEGORY, "UriFilter" })
+@Description("Matching of a request URI against the UriFilter pattern lists")
+@Enabled(false)
+@StackTrace(false)
+public final class UriFilterRoutingEvent extends Event {
+
+    public static final String NAME = CasEvents.PREFIX + "UriFilterRouting";
+
+    @Label("URI")
+    @Description("The request URI, normalized if the filter normalizes URIs")
+    public String uri;
+
+    @Label("Tier")
+    @Description("The pattern list that matched, or none")
+    public String tier;
+
+    @Label("Pattern Index")
+    @Description("Configuration order index of the matching pattern, or -1")
+    public int patternIndex;
+
+    @Label("Forwarded")
+    @Description("Whether the request was forwarded to the delegate filter")
+    public boolean forwarded;
+}
@@ -0,0 +1,128 @@
+package au.org.ala.cas.util;
+
+import java.util.EnumSet;
+import java.util.Locale;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Detects requests that are made by scripts rather than by browser navigation, and so cannot follow a redirect to the
+ * CAS login page.
+ * <p>
+ * The signals that are used are configured by the <code>ala.cas.ajax.signals</code> system property or the
+ * <code>ALA_CAS_AJAX_SIGNALS</code> environment variable, as a comma delimited list of {@link Signal} names.  By
+ * default all are used.
+ */
+public class AjaxRequestDetector {
+
+    private final static Logger logger = LoggerFactory.getLogger(AjaxRequestDetector.class);
+
+    public static final String AJAX_SIGNALS_PROPERTY = "ala.cas.ajax.signals";
+    public static final String AJAX_SIGNALS_ENV = "ALA_CAS_AJAX_SIGNALS";
+
+    public enum Signal {
+        /** An <code>X-Requested-With: XMLHttpRequest</code> header, as set by jQuery */
+        X_REQUESTED_WITH,
+        /**
+         * A <code>Sec-Fetch-Mode</code> header of <code>cors</code> or <code>same-origin</code>, as set by browsers for fetch() and
+         * XHR.  Not <code>no-cors</code>, which browsers also send for images, scripts and style sheets
+         */
+        SEC_FETCH_MODE,
+        /** An <code>Accept</code> header that accepts JSON but not HTML */
+        ACCEPT_JSON
+    }
+
+    private static final AjaxRequestDetector DEFAULT = forSignals(
+            firstNotNull(System.getProperty(AJAX_SIGNALS_PROPERTY), System.getenv(AJAX_SIGNALS_ENV)));
+
+    private final boolean xRequestedWith;
+    private final boolean secFetchMode;
+    private final boolean acceptJson;
+
+    public AjaxRequestDetector(final EnumSet<Signal> signals) {
+        this.xRequestedWith = signals.contains(Signal.X_REQUESTED_WITH);
+        this.secFetchMode = signals.contains(Signal.SEC_FETCH_MODE);
+        this.acceptJson = signals.contains(Signal.ACCEPT_JSON);
+    }
+
+    /**
+     * @return The detector configured by the system property or environment variable
+     */
+    public static AjaxRequestDetector getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param signals A comma delimited list of signal names, case insensitive.  Null or blank for all signals
+     * @return A detector using the signals
+     */
+    public static AjaxRequestDetector forSignals(final String signals) {
+        if (signals == null || signals.trim().isEmpty()) {
+            return new AjaxRequestDetector(EnumSet.allOf(Signal.class));
+        }
+        final EnumSet<Signal> set = EnumSet.noneOf(Signal.class);
+        for (final String signal : signals.split(",")) {
+            final String name = signal.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+            if (name.isEmpty()) {
+                continue;
+            }
+            try {
+                set.add(Signal.valueOf(name));
+            } catch (final IllegalArgumentException e) {
+                logger.warn("Ignoring unknown AJAX request signal '{}'", signal.trim());
+            }
+        }
+        logger.debug("AJAX request signals = {}", set);
+        return new AjaxRequestDetector(set);
+    }
+
+    /**
+     * @param request the request to check.
+     * @return true if the request was initiated by a script rather than by navigation.
+     */
+    public boolean isAjax(final HttpServletRequest request) {
+        if (xRequestedWith && "XMLHttpRequest".equals(request.getHeader("X-Requested-With"))) {
+            return true;
+        }
+        if (secFetchMode) {
+            final String mode = request.getHeader("Sec-Fetch-Mode");
+            if ("cors".equalsIgnoreCase(mode) || "same-origin".equalsIgnoreCase(mode)) {
+                return true;
+            }
+        }
+        return acceptJson && acceptsJsonNotHtml(request.getHeader("Accept"));
+    }
+
+    /**
+     * @return true if the header lists a JSON media type, such as <code>application/json</code> or
+     * <code>application/problem+json</code>, and does not list <code>text/html</code>
+     */
+    static boolean acceptsJsonNotHtml(final String accept) {
+        if (accept == null) {
+            return false;
+        }
+        return (containsIgnoreCase(accept, "application/json") || containsIgnoreCase(accept, "+json"))
+                && !containsIgnoreCase(accept, "text/html");
+    }
+
+    private static boolean containsIgnoreCase(final String str, final String part) {
+        for (int i = 0; i <= str.length() - part.length(); i++) {
+            if (str.regionMatches(true, i, part, 0, part.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String firstNotNull(final String... strings) {
+        for (final String string : strings) {
+            if (string != null && !string.trim().equals("")) {
+                return string;
+            }
+        }
+        return null;
+    }
+}
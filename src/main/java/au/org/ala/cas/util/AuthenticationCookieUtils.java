@@ -6,6 +6,16 @@ import org.slf4j.LoggerFactory;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helper methods for the ALA authentication cookie.
+ * <p>
+ * If a key is configured, by the <code>ala.auth.cookie.key</code> system property or the
+ * <code>ALA_AUTH_COOKIE_KEY</code> environment variable, then the cookie is only accepted if it is a valid, unexpired
+ * {@link SignedAuthCookie} signed with that key, and its user id and email can be trusted.  Otherwise the presence of
+ * the cookie is taken to mean that the user is logged in and its value is taken to be the user's email.
+ */
 public class AuthenticationCookieUtils {
     
     private final static Logger logger = LoggerFactory.getLogger(AuthenticationCookieUtils.class);
@@ -14,10 +24,21 @@ public class AuthenticationCookieUtils {
     public static final String ALA_AUTH_COOKIE_NAME_PROPERTY = "ala.auth.cookie.name";
     public static final String ALA_AUTH_COOKIE_NAME_ENV = "ALA_AUTH_COOKIE_NAME";
 
+    public static final String ALA_AUTH_COOKIE_KEY_PROPERTY = "ala.auth.cookie.key";
+    public static final String ALA_AUTH_COOKIE_KEY_ENV = "ALA_AUTH_COOKIE_KEY";
+
     public static final String ALA_AUTH_COOKIE;
 
+    /** Key of the signed cookie, or null if the cookie is not signed */
+    private static final byte[] ALA_AUTH_COOKIE_KEY;
+
+    /** Request attribute caching the verified cookie, or {@link Boolean#FALSE} if there is none */
+    private static final String SIGNED_AUTH_COOKIE_ATTRIBUTE = SignedAuthCookie.class.getName();
+
     static {
         ALA_AUTH_COOKIE = firstNotNull(System.getProperty(ALA_AUTH_COOKIE_NAME_PROPERTY), System.getenv(ALA_AUTH_COOKIE_NAME_ENV), DEFAULT_ALA_AUTH_COOKIE_NAME);
+        String key = firstNotNull(System.getProperty(ALA_AUTH_COOKIE_KEY_PROPERTY), System.getenv(ALA_AUTH_COOKIE_KEY_ENV));
+        ALA_AUTH_COOKIE_KEY = key.isEmpty() ? null : key.getBytes(StandardCharsets.UTF_8);
     }
 
     private static String firstNotNull(String... strings) {
@@ -29,15 +50,80 @@ public class AuthenticationCookieUtils {
         return "";
     }
 
+    /**
+     * @return true if the cookie is signed, in which case its claims can be trusted
+     */
+    public static boolean isSignedCookieEnabled() {
+        return ALA_AUTH_COOKIE_KEY != null;
+    }
+
     @Deprecated
     public static boolean isUserLoggedIn(HttpServletRequest request) {
+      if (isSignedCookieEnabled()) {
+          return getSignedAuthCookie(request) != null;
+      }
       return cookieExists(request, ALA_AUTH_COOKIE);
     }
 
     @Deprecated
     public static String getUserName(HttpServletRequest request) {
+        if (isSignedCookieEnabled()) {
+            SignedAuthCookie cookie = getSignedAuthCookie(request);
+            return cookie == null ? null : cookie.getEmail();
+        }
         return getCookieValue(request, ALA_AUTH_COOKIE);
     }
+
+    /**
+     * The user id of the signed authentication cookie.  The cookie outlives a CAS logout, so this is not proof that the
+     * user is currently authenticated and must only be used for display, never for authorisation.
+     *
+     * @param request The request
+     * @return The user id of a valid signed cookie, or null if there is none or the cookie is not signed
+     */
+    public static String getCookieUserId(HttpServletRequest request) {
+        SignedAuthCookie cookie = getSignedAuthCookie(request);
+        return cookie == null ? null : cookie.getUserId();
+    }
+
+    /**
+     * Verifies the authentication cookie with the configured key once per request.
+     *
+     * @param request The request
+     * @return The verified claims of the authentication cookie, or null if there is no valid cookie or the cookie is not signed
+     */
+    public static SignedAuthCookie getSignedAuthCookie(HttpServletRequest request) {
+        if (ALA_AUTH_COOKIE_KEY == null || request == null) {
+            return null;
+        }
+        Object cached = request.getAttribute(SIGNED_AUTH_COOKIE_ATTRIBUTE);
+        if (cached != null) {
+            return cached instanceof SignedAuthCookie ? (SignedAuthCookie) cached : null;
+        }
+
+        SignedAuthCookie cookie = getSignedAuthCookie(request, ALA_AUTH_COOKIE_KEY);
+        request.setAttribute(SIGNED_AUTH_COOKIE_ATTRIBUTE, cookie == null ? Boolean.FALSE : cookie);
+        return cookie;
+    }
+
+    /**
+     * Verifies the authentication cookie with the given key.  The result is not cached, as it depends on the key.
+     *
+     * @param request The request
+     * @param key The key the cookie is signed with
+     * @return The verified claims of the authentication cookie, or null if there is no valid cookie
+     */
+    public static SignedAuthCookie getSignedAuthCookie(HttpServletRequest request, byte[] key) {
+        if (request == null) {
+            return null;
+        }
+        String value = getCookieValue(request, ALA_AUTH_COOKIE);
+        SignedAuthCookie cookie = SignedAuthCookie.verify(value, key, System.currentTimeMillis());
+        if (cookie == null && value != null) {
+            logger.debug("Cookie {} is not validly signed or has expired", ALA_AUTH_COOKIE);
+        }
+        return cookie;
+    }
     
     public static boolean cookieExists(HttpServletRequest request, String name) {
         return getCookieValue(request, name) != null;
@@ -1,11 +1,14 @@
 package au.org.ala.cas.util;
 
 import org.apereo.cas.client.authentication.AttributePrincipal;
+import org.apereo.cas.client.util.AbstractCasFilter;
 import org.apereo.cas.client.util.CommonUtils;
+import org.apereo.cas.client.validation.Assertion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
 import java.security.Principal;
 import java.util.Collection;
 import java.util.Collections;
@@ -96,6 +99,10 @@ public class AuthenticationUtils {
 
         if (userPrincipal instanceof AttributePrincipal) {
             AttributePrincipal principal = (AttributePrincipal) userPrincipal;
+            if (principal instanceof RoleAwarePrincipal
+                    && ATTR_ROLES.equals(((RoleAwarePrincipal) principal).getRoleAttribute())) {
+                return new HashSet<String>(((RoleAwarePrincipal) principal).getRoles());
+            }
             Object roles = principal.getAttributes().get(ATTR_ROLES);
             if (roles instanceof Collection) {
                 return new HashSet<String>((Collection)roles);
@@ -128,6 +135,18 @@ public class AuthenticationUtils {
         return request.isUserInRole(role);
     }
 
+    /**
+     * Retrieves the CAS assertion stored by the CAS validation filter, from the session if there is one, otherwise from the request.
+     * @param request The current request
+     * @return The assertion for the authenticated user, or null if not authenticated
+     */
+    public static Assertion getAssertion(final HttpServletRequest request) {
+        final HttpSession session = request.getSession(false);
+        final Object assertion = session == null ? request.getAttribute(AbstractCasFilter.CONST_CAS_ASSERTION)
+                : session.getAttribute(AbstractCasFilter.CONST_CAS_ASSERTION);
+        return assertion instanceof Assertion ? (Assertion) assertion : null;
+    }
+
     /**
      * Helper method that extracts the value of a specified attribute value from a {@link org.apereo.cas.client.authentication.AttributePrincipal}
      * @param request Needs to be a {@link au.org.ala.cas.client.AlaHttpServletRequestWrapperFilter} or {@link org.apereo.cas.client.util.HttpServletRequestWrapperFilter}
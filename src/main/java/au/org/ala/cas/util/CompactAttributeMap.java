@@ -0,0 +1,172 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map backed by flat arrays of keys and values, for the small attribute maps held by every session.
+ * <p>
+ * Keys are interned, so that the same attribute names are shared by every map, and lookups are a linear scan that
+ * compares references before falling back to {@link String#equals(Object)}.  For the handful of attributes a CAS
+ * principal carries this is as fast as hashing and uses a fraction of the memory of a {@link java.util.HashMap}.
+ */
+public final class CompactAttributeMap extends AbstractMap<String, Object> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final CompactAttributeMap EMPTY = new CompactAttributeMap(new String[0], new Object[0]);
+
+    private final String[] keys;
+    private final Object[] values;
+
+    private CompactAttributeMap(final String[] keys, final Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * @param attributes The attributes to copy, may be null
+     * @return A compact copy of the attributes with interned keys and the values as is
+     */
+    public static CompactAttributeMap copyOf(final Map<String, ?> attributes) {
+        if (attributes == null || attributes.isEmpty()) {
+            return EMPTY;
+        }
+        if (attributes instanceof CompactAttributeMap) {
+            return (CompactAttributeMap) attributes;
+        }
+
+        final String[] keys = new String[attributes.size()];
+        final Object[] values = new Object[attributes.size()];
+        int i = 0;
+        for (final Map.Entry<String, ?> entry : attributes.entrySet()) {
+            keys[i] = entry.getKey() == null ? null : entry.getKey().intern();
+            values[i] = entry.getValue();
+            i++;
+        }
+        return new CompactAttributeMap(keys, values);
+    }
+
+    /**
+     * @param keys The keys, which are interned
+     * @param values The values, in the same order as the keys
+     * @return A map of the keys to the values.  The arrays are used as is and must not be modified afterwards
+     */
+    public static CompactAttributeMap of(final String[] keys, final Object[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Number of keys and values differ");
+        }
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keys[i] == null ? null : keys[i].intern();
+        }
+        return keys.length == 0 ? EMPTY : new CompactAttributeMap(keys, values);
+    }
+
+    /**
+     * @param key The key
+     * @param value The value to use instead of the current value, if the key is present
+     * @return A copy of this map with the value of the given key replaced
+     */
+    public CompactAttributeMap withValue(final String key, final Object value) {
+        final int index = indexOf(key);
+        if (index < 0) {
+            return this;
+        }
+        final Object[] newValues = values.clone();
+        newValues[index] = value;
+        return new CompactAttributeMap(keys, newValues);
+    }
+
+    @Override
+    public Object get(final Object key) {
+        final int index = indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<Map.Entry<String, Object>>() {
+                    private int next = 0;
+
+                    public boolean hasNext() {
+                        return next < keys.length;
+                    }
+
+                    public Map.Entry<String, Object> next() {
+                        if (next >= keys.length) {
+                            throw new NoSuchElementException();
+                        }
+                        final int index = next++;
+                        return new AbstractMap.SimpleImmutableEntry<String, Object>(keys[index], values[index]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+        };
+    }
+
+    private int indexOf(final Object key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        if (key != null) {
+            for (int i = 0; i < keys.length; i++) {
+                if (key.equals(keys[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keys[i] == null ? null : keys[i].intern();
+        }
+    }
+
+    private Object readResolve() {
+        return keys.length == 0 ? EMPTY : this;
+    }
+}
@@ -0,0 +1,240 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link UriPattern} using Ant/servlet style glob syntax:
+ * <table border="1">
+ *     <caption>Glob syntax</caption>
+ *     <tr><th>Glob</th><th>Matches</th></tr>
+ *     <tr><td><code>?</code></td><td>Any single character except <code>/</code></td></tr>
+ *     <tr><td><code>*</code></td><td>Zero or more characters except <code>/</code></td></tr>
+ *     <tr><td><code>**</code></td><td>Zero or more characters, including <code>/</code></td></tr>
+ *     <tr><td><code>/&#42;&#42;/</code></td><td>Zero or more directories, e.g. <code>/css/&#42;&#42;/site.css</code> matches <code>/css/site.css</code></td></tr>
+ *     <tr><td>trailing <code>/&#42;&#42;</code></td><td>The directory and everything below it, e.g. <code>/static/&#42;&#42;</code> matches <code>/static</code></td></tr>
+ *     <tr><td>leading <code>*.</code></td><td>An extension (suffix) match below the context, e.g. <code>*.js</code></td></tr>
+ * </table>
+ * Every other character matches itself.
+ * <p>
+ * Matching never backtracks.  The literal prefix and suffix of the glob are compared directly and the rest is matched by
+ * simulating a non-deterministic automaton with one bit per glob position, so the time taken is linear in the length
+ * of the string.
+ */
+public class GlobUriPattern implements UriPattern {
+
+	/** Maximum number of glob positions between the literal prefix and suffix, one per bit of a long */
+	private static final int MAX_STATES = Long.SIZE - 1;
+
+	private static final char ANY_CHAR = '?';
+	private static final char STAR = '*';
+
+	private final String pattern;
+	private final boolean caseInsensitive;
+	private final String prefix;
+	private final String suffix;
+
+	/** Number of glob positions to be matched by the automaton, the accepting state is bit <code>states</code> */
+	private final int states;
+	/** true if the automaton accepts any string, e.g. the <code>**</code> in <code>*.js</code> */
+	private final boolean matchesAnyMiddle;
+	/** Bit k is set if position k accepts the ASCII character used as the index */
+	private final long[] asciiMasks = new long[128];
+	/** Literal characters per position, for non-ASCII input */
+	private final char[] literals;
+	/** Positions accepting any character other than '/', and any character at all */
+	private final long anyExceptSlashMask;
+	private final long anyMask;
+	/** Positions that may repeat, i.e. <code>*</code> and <code>**</code> */
+	private final long starMask;
+	/** Epsilon transitions from/to position, sorted by source position */
+	private final int[] epsilonFrom;
+	private final int[] epsilonTo;
+
+	/**
+	 * @param context Literal prefix, typically the context path
+	 * @param glob The glob
+	 * @param caseInsensitive Whether ASCII letters match regardless of case
+	 */
+	public GlobUriPattern(String context, String glob, boolean caseInsensitive) {
+		String prefixedGlob = (context == null ? "" : context) + (glob.startsWith("*.") ? "/**" + glob.substring(1) : glob);
+		this.pattern = (context == null ? "" : context) + glob;
+		this.caseInsensitive = caseInsensitive;
+
+		// Tokenize into one position per literal, '?', '*' or '**'
+		List<Character> tokens = new ArrayList<Character>();
+		List<Boolean> doubleStars = new ArrayList<Boolean>();
+		List<Integer> sourceIndexes = new ArrayList<Integer>();
+		for (int i = 0; i < prefixedGlob.length(); i++) {
+			char c = prefixedGlob.charAt(i);
+			sourceIndexes.add(i);
+			boolean doubleStar = c == STAR && i + 1 < prefixedGlob.length() && prefixedGlob.charAt(i + 1) == STAR;
+			while (doubleStar && i + 1 < prefixedGlob.length() && prefixedGlob.charAt(i + 1) == STAR) {
+				i++;
+			}
+			tokens.add(c);
+			doubleStars.add(doubleStar);
+		}
+		int tokenCount = tokens.size();
+		sourceIndexes.add(prefixedGlob.length());
+
+		// A '/**' followed by '/' or at the end is optional, so that '/**/' matches '/' and a trailing '/**' matches nothing.
+		// The skip starts before the '/' rather than at the '**' which, once it has consumed characters, must not skip.
+		List<int[]> epsilons = new ArrayList<int[]>();
+		int firstGroupStart = tokenCount;
+		int lastGroupEnd = 0;
+		for (int k = 1; k < tokenCount; k++) {
+			if (doubleStars.get(k) && isLiteral(tokens, doubleStars, k - 1, '/')
+					&& (k == tokenCount - 1 || isLiteral(tokens, doubleStars, k + 1, '/'))) {
+				epsilons.add(new int[] { k - 1, k + 1 });
+				firstGroupStart = Math.min(firstGroupStart, k - 1);
+				lastGroupEnd = Math.max(lastGroupEnd, k + 1);
+			}
+		}
+
+		// Literal prefix and suffix are compared directly
+		int start = 0;
+		while (start < Math.min(tokenCount, firstGroupStart) && isLiteral(tokens, start)) {
+			start++;
+		}
+		int end = tokenCount;
+		while (end > Math.max(start, lastGroupEnd) && isLiteral(tokens, end - 1)) {
+			end--;
+		}
+		this.prefix = prefixedGlob.substring(0, sourceIndexes.get(start));
+		this.suffix = prefixedGlob.substring(sourceIndexes.get(end));
+
+		this.states = end - start;
+		if (states > MAX_STATES) {
+			throw new IllegalArgumentException("Glob pattern '" + pattern + "' has more than " + MAX_STATES
+					+ " characters between its first and last wildcard");
+		}
+
+		this.literals = new char[states];
+		long anyExceptSlash = 0;
+		long any = 0;
+		long star = 0;
+		for (int k = 0; k < states; k++) {
+			char c = tokens.get(start + k);
+			long bit = 1L << k;
+			if (doubleStars.get(start + k)) {
+				any |= bit;
+				star |= bit;
+			} else if (c == STAR) {
+				anyExceptSlash |= bit;
+				star |= bit;
+			} else if (c == ANY_CHAR) {
+				anyExceptSlash |= bit;
+			} else {
+				literals[k] = c;
+				asciiMasksFor(c, bit);
+			}
+		}
+		for (int c = 0; c < asciiMasks.length; c++) {
+			asciiMasks[c] |= any | (c == '/' ? 0 : anyExceptSlash);
+		}
+		this.anyExceptSlashMask = anyExceptSlash;
+		this.anyMask = any;
+		this.starMask = star;
+		this.matchesAnyMiddle = states > 0 && any == (1L << states) - 1 && star == any;
+
+		// A star may also match nothing
+		for (int k = 0; k < states; k++) {
+			if ((star & (1L << k)) != 0) {
+				epsilons.add(new int[] { start + k, start + k + 1 });
+			}
+		}
+		epsilons.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+		this.epsilonFrom = new int[epsilons.size()];
+		this.epsilonTo = new int[epsilons.size()];
+		for (int i = 0; i < epsilons.size(); i++) {
+			epsilonFrom[i] = epsilons.get(i)[0] - start;
+			epsilonTo[i] = epsilons.get(i)[1] - start;
+		}
+	}
+
+	public boolean matches(String str) {
+		int length = str.length();
+		if (length < prefix.length() + suffix.length()
+				|| !str.regionMatches(caseInsensitive, 0, prefix, 0, prefix.length())
+				|| !str.regionMatches(caseInsensitive, length - suffix.length(), suffix, 0, suffix.length())) {
+			return false;
+		}
+
+		int end = length - suffix.length();
+		if (matchesAnyMiddle) {
+			return true;
+		}
+
+		long active = close(1L);
+		for (int i = prefix.length(); i < end && active != 0; i++) {
+			char c = str.charAt(i);
+			long accepted = active & (c < 128 ? asciiMasks[c] : nonAsciiMask(c));
+			active = close(((accepted & ~starMask) << 1) | (accepted & starMask));
+		}
+		return (active & (1L << states)) != 0;
+	}
+
+	public String pattern() {
+		return pattern;
+	}
+
+	@Override
+	public String toString() {
+		return pattern;
+	}
+
+	private long close(long active) {
+		for (int i = 0; i < epsilonFrom.length; i++) {
+			if ((active & (1L << epsilonFrom[i])) != 0) {
+				active |= 1L << epsilonTo[i];
+			}
+		}
+		return active;
+	}
+
+	private long nonAsciiMask(char c) {
+		long mask = anyMask | anyExceptSlashMask;
+		for (int k = 0; k < states; k++) {
+			char literal = literals[k];
+			if (literal == c || (caseInsensitive && literal != 0 && Character.toLowerCase(literal) == Character.toLowerCase(c))) {
+				mask |= 1L << k;
+			}
+		}
+		return mask;
+	}
+
+	private void asciiMasksFor(char c, long bit) {
+		if (c < 128) {
+			asciiMasks[c] |= bit;
+			if (caseInsensitive && c >= 'a' && c <= 'z') {
+				asciiMasks[c - ('a' - 'A')] |= bit;
+			} else if (caseInsensitive && c >= 'A' && c <= 'Z') {
+				asciiMasks[c + ('a' - 'A')] |= bit;
+			}
+		}
+	}
+
+	private static boolean isLiteral(List<Character> tokens, int k) {
+		char c = tokens.get(k);
+		return c != STAR && c != ANY_CHAR;
+	}
+
+	private static boolean isLiteral(List<Character> tokens, List<Boolean> doubleStars, int k, char literal) {
+		return k >= 0 && k < tokens.size() && !doubleStars.get(k) && tokens.get(k) == literal;
+	}
+}
@@ -26,18 +26,111 @@ public class PatternMatchingUtils {
 
 	private final static Logger logger = LoggerFactory.getLogger(PatternMatchingUtils.class);
 
+	/**
+	 * Syntax of the patterns in a comma delimited list.  Individual patterns may override the syntax of the list by
+	 * starting with <code>regex:</code> or <code>glob:</code>.
+	 */
+	public enum Syntax {
+		/** Java regular expressions, see {@link Pattern} */
+		REGEX,
+		/** Ant/servlet style globs, see {@link GlobUriPattern} */
+		GLOB;
+
+		private String prefix() {
+			return name().toLowerCase() + ":";
+		}
+
+		/**
+		 * @param syntax Case insensitive syntax name, may be null
+		 * @return The named syntax, or {@link #REGEX} if the name is null or empty
+		 */
+		public static Syntax forName(String syntax) {
+			if (syntax == null || syntax.trim().equals("")) {
+				return REGEX;
+			}
+			return valueOf(syntax.trim().toUpperCase());
+		}
+	}
+
 	public static List<Pattern> getPatternList(String context, String regexPatterns) {
+		return getPatternList(context, regexPatterns, true);
+	}
+
+	/**
+	 * @param context Prefix for each pattern, typically the context path
+	 * @param regexPatterns Comma delimited list of regular expressions
+	 * @param caseInsensitive Whether the patterns ignore case.  Patterns matched against {@link UriNormalizer normalized}
+	 *                        URIs can be case sensitive, which is faster, but must then be written in lower case
+	 * @return The compiled patterns
+	 */
+	public static List<Pattern> getPatternList(String context, String regexPatterns, boolean caseInsensitive) {
 		List<Pattern> patternList = new ArrayList<Pattern>();
 
 		if (regexPatterns != null && !regexPatterns.equals("")) {
 			for (String regex : regexPatterns.split(",")) {
-				patternList.add(Pattern.compile(context + regex.trim(), Pattern.CASE_INSENSITIVE));
+				patternList.add(Pattern.compile(context + regex.trim(), caseInsensitive ? Pattern.CASE_INSENSITIVE : 0));
 			}
 		}
 
 		return patternList;
 	}
 
+	/**
+	 * @param context Prefix for each pattern, typically the context path
+	 * @param patterns Comma delimited list of patterns, each optionally prefixed with <code>regex:</code> or <code>glob:</code>
+	 * @param syntax Syntax of the patterns without a prefix
+	 * @param caseInsensitive Whether the patterns ignore case.  Patterns matched against {@link UriNormalizer normalized}
+	 *                        URIs can be case sensitive, which is faster, but must then be written in lower case
+	 * @return The compiled patterns
+	 */
+	public static List<UriPattern> getUriPatternList(String context, String patterns, Syntax syntax, boolean caseInsensitive) {
+		List<UriPattern> patternList = new ArrayList<UriPattern>();
+
+		if (patterns != null && !patterns.equals("")) {
+			for (String pattern : patterns.split(",")) {
+				pattern = pattern.trim();
+				Syntax patternSyntax = syntax;
+				for (Syntax candidate : Syntax.values()) {
+					if (pattern.startsWith(candidate.prefix())) {
+						patternSyntax = candidate;
+						pattern = pattern.substring(candidate.prefix().length()).trim();
+						break;
+					}
+				}
+
+				if (patternSyntax == Syntax.GLOB) {
+					patternList.add(new GlobUriPattern(context, pattern, caseInsensitive));
+				} else {
+					patternList.add(new RegexUriPattern(Pattern.compile(context + pattern, caseInsensitive ? Pattern.CASE_INSENSITIVE : 0)));
+				}
+			}
+		}
+
+		return patternList;
+	}
+
+	/**
+	 * @param context Prefix for each pattern, typically the context path
+	 * @param regexPatterns Comma delimited list of regular expressions
+	 * @param adaptive Whether the patterns are re-ordered so that the most frequently matching are tried first
+	 * @return A matcher for the list of patterns
+	 */
+	public static UriPatternMatcher getPatternMatcher(String context, String regexPatterns, boolean adaptive) {
+		return getPatternMatcher(context, regexPatterns, Syntax.REGEX, adaptive, true);
+	}
+
+	/**
+	 * @param context Prefix for each pattern, typically the context path
+	 * @param patterns Comma delimited list of patterns, each optionally prefixed with <code>regex:</code> or <code>glob:</code>
+	 * @param syntax Syntax of the patterns without a prefix
+	 * @param adaptive Whether the patterns are re-ordered so that the most frequently matching are tried first
+	 * @param caseInsensitive Whether the patterns ignore case
+	 * @return A matcher for the list of patterns
+	 */
+	public static UriPatternMatcher getPatternMatcher(String context, String patterns, Syntax syntax, boolean adaptive, boolean caseInsensitive) {
+		return new UriPatternMatcher(getUriPatternList(context, patterns, syntax, caseInsensitive), adaptive);
+	}
+
 	public static boolean matches(String str, List<Pattern> patterns) {
 		for (Pattern pattern : patterns) {
 			Matcher matcher = pattern.matcher(str);
@@ -0,0 +1,46 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.util;
+
+import java.util.regex.Pattern;
+
+/**
+ * A {@link UriPattern} backed by a regular expression.
+ */
+public class RegexUriPattern implements UriPattern {
+
+	private final Pattern pattern;
+
+	public RegexUriPattern(Pattern pattern) {
+		this.pattern = pattern;
+	}
+
+	public boolean matches(String str) {
+		return pattern.matcher(str).matches();
+	}
+
+	public String pattern() {
+		return pattern.pattern();
+	}
+
+	public Pattern getPattern() {
+		return pattern;
+	}
+
+	@Override
+	public String toString() {
+		return pattern.toString();
+	}
+}
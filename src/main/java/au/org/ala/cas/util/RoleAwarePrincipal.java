@@ -0,0 +1,36 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.util;
+
+import java.util.Set;
+
+import org.apereo.cas.client.authentication.AttributePrincipal;
+
+/**
+ * An {@link AttributePrincipal} that holds its roles already parsed, so that {@link AuthenticationUtils#getUserRoles}
+ * does not have to parse the role attribute on every call.
+ */
+public interface RoleAwarePrincipal extends AttributePrincipal {
+
+    /**
+     * @return Name of the attribute the roles were parsed from
+     */
+    String getRoleAttribute();
+
+    /**
+     * @return The roles as an unmodifiable set
+     */
+    Set<String> getRoles();
+}
@@ -0,0 +1,267 @@
+package au.org.ala.cas.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The verified claims of a signed ALA authentication cookie.
+ * <p>
+ * The cookie value has the form <code>v1.&lt;expiry&gt;.&lt;user id&gt;.&lt;email&gt;.&lt;mac&gt;</code>, where the
+ * expiry is in seconds since the epoch, the user id and email are unpadded base64url encoded UTF-8 and the mac is the
+ * unpadded base64url encoded HMAC-SHA256 of everything before the last '.'.
+ * <p>
+ * Verification works on the cookie string in place, using a clone of a MAC that is initialised once per key, and only
+ * creates strings for the claims of a valid cookie.  Nothing is held per thread, so no container worker thread keeps a
+ * reference to this class after the web application is undeployed.  The MAC is compared in constant time.
+ */
+public final class SignedAuthCookie {
+
+    public static final String VERSION = "v1";
+    public static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final int MAC_LENGTH = 32;
+    /** Length of the base64url encoded MAC */
+    private static final int ENCODED_MAC_LENGTH = (MAC_LENGTH * 8 + 5) / 6;
+    /** Maximum length of a cookie value that will be verified */
+    private static final int MAX_LENGTH = 4096;
+
+    private static final byte[] BASE64URL_VALUES = new byte[128];
+    static {
+        Arrays.fill(BASE64URL_VALUES, (byte) -1);
+        final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64URL_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    /** An initialised MAC for the last key used, only ever cloned, never updated */
+    private static volatile KeyedMac prototype;
+
+    private final String userId;
+    private final String email;
+    private final long expiry;
+
+    private SignedAuthCookie(final String userId, final String email, final long expiry) {
+        this.userId = userId;
+        this.email = email;
+        this.expiry = expiry;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * @return The expiry in seconds since the epoch
+     */
+    public long getExpiry() {
+        return expiry;
+    }
+
+    /**
+     * Creates a signed cookie value, for the application that issues the cookie and for testing.
+     *
+     * @param userId The user id
+     * @param email The email address
+     * @param expiry The expiry in seconds since the epoch
+     * @param key The MAC key
+     * @return The cookie value
+     */
+    public static String create(final String userId, final String email, final long expiry, final byte[] key) {
+        final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        final String claims = VERSION + "." + expiry + "."
+                + encoder.encodeToString(userId.getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(email.getBytes(StandardCharsets.UTF_8));
+        try {
+            final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+            return claims + "." + encoder.encodeToString(mac.doFinal(claims.getBytes(StandardCharsets.US_ASCII)));
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to sign cookie", e);
+        }
+    }
+
+    /**
+     * @param value The cookie value, may be null
+     * @param key The MAC key
+     * @param now The current time in milliseconds since the epoch
+     * @return The claims if the value is correctly signed and has not expired, otherwise null
+     */
+    public static SignedAuthCookie verify(final String value, final byte[] key, final long now) {
+        if (value == null || value.length() > MAX_LENGTH || !value.startsWith(VERSION + ".")) {
+            return null;
+        }
+        final int expiryEnd = value.indexOf('.', VERSION.length() + 1);
+        final int userIdEnd = expiryEnd < 0 ? -1 : value.indexOf('.', expiryEnd + 1);
+        final int emailEnd = userIdEnd < 0 ? -1 : value.indexOf('.', userIdEnd + 1);
+        if (emailEnd < 0 || value.length() - emailEnd - 1 != ENCODED_MAC_LENGTH) {
+            return null;
+        }
+
+        final long expiry = parseExpiry(value, VERSION.length() + 1, expiryEnd);
+        if (expiry < 0 || expiry * 1000 <= now) {
+            return null;
+        }
+
+        final Mac mac = mac(key);
+        if (mac == null) {
+            return null;
+        }
+        final Verifier verifier = new Verifier(mac, value.length());
+        if (!verifier.verifyMac(value, emailEnd)) {
+            return null;
+        }
+
+        final String userId = verifier.decodeToString(value, expiryEnd + 1, userIdEnd);
+        final String email = verifier.decodeToString(value, userIdEnd + 1, emailEnd);
+        if (userId == null || email == null) {
+            return null;
+        }
+        return new SignedAuthCookie(userId, email, expiry);
+    }
+
+    /**
+     * @return The non-negative decimal number in the region, or -1 if it is not one
+     */
+    private static long parseExpiry(final String value, final int start, final int end) {
+        if (end - start < 1 || end - start > 18) {
+            return -1;
+        }
+        long expiry = 0;
+        for (int i = start; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            expiry = expiry * 10 + (c - '0');
+        }
+        return expiry;
+    }
+
+    /**
+     * @return A MAC initialised with the key, or null if the key cannot be used
+     */
+    private static Mac mac(final byte[] key) {
+        try {
+            KeyedMac keyed = prototype;
+            if (keyed == null || keyed.key != key) {
+                keyed = new KeyedMac(key, newMac(key));
+                prototype = keyed;
+            }
+            try {
+                return (Mac) keyed.mac.clone();
+            } catch (final CloneNotSupportedException e) {
+                return newMac(key);
+            }
+        } catch (final GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    private static Mac newMac(final byte[] key) throws GeneralSecurityException {
+        final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+        return mac;
+    }
+
+    @Override
+    public String toString() {
+        return "SignedAuthCookie[userId=" + userId + ", email=" + email + ", expiry=" + expiry + "]";
+    }
+
+    private static final class KeyedMac {
+
+        final byte[] key;
+        final Mac mac;
+
+        KeyedMac(final byte[] key, final Mac mac) {
+            this.key = key;
+            this.mac = mac;
+        }
+    }
+
+    /**
+     * The MAC and buffers used to verify one cookie value.
+     */
+    private static final class Verifier {
+
+        final Mac mac;
+        final byte[] buffer;
+        final byte[] expected = new byte[MAC_LENGTH];
+
+        Verifier(final Mac mac, final int length) {
+            this.mac = mac;
+            this.buffer = new byte[Math.max(length, MAC_LENGTH)];
+        }
+
+        boolean verifyMac(final String value, final int claimsEnd) {
+            for (int i = 0; i < claimsEnd; i++) {
+                final char c = value.charAt(i);
+                if (c > 0x7F) {
+                    return false;
+                }
+                buffer[i] = (byte) c;
+            }
+            mac.update(buffer, 0, claimsEnd);
+            try {
+                mac.doFinal(expected, 0);
+            } catch (final GeneralSecurityException e) {
+                mac.reset();
+                return false;
+            }
+
+            final int length = decode(value, claimsEnd + 1, value.length());
+            if (length != MAC_LENGTH) {
+                return false;
+            }
+            int difference = 0;
+            for (int i = 0; i < MAC_LENGTH; i++) {
+                difference |= buffer[i] ^ expected[i];
+            }
+            return difference == 0;
+        }
+
+        String decodeToString(final String value, final int start, final int end) {
+            final int length = decode(value, start, end);
+            return length < 0 ? null : new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Decodes the unpadded base64url region into the buffer.
+         *
+         * @return The number of bytes decoded, or -1 if the region is not canonical base64url
+         */
+        private int decode(final String value, final int start, final int end) {
+            if ((end - start) % 4 == 1) {
+                return -1;
+            }
+            int length = 0;
+            int bits = 0;
+            int bitCount = 0;
+            for (int i = start; i < end; i++) {
+                final char c = value.charAt(i);
+                final int sextet = c < 128 ? BASE64URL_VALUES[c] : -1;
+                if (sextet < 0) {
+                    return -1;
+                }
+                bits = ((bits << 6) | sextet) & 0x3FFF;
+                bitCount += 6;
+                if (bitCount >= 8) {
+                    bitCount -= 8;
+                    buffer[length++] = (byte) (bits >> bitCount);
+                }
+            }
+            // Only the canonical encoding is accepted, so the unused trailing bits must be zero
+            return (bits & ((1 << bitCount) - 1)) == 0 ? length : -1;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Normalizes request URIs into a canonical form for pattern matching.  The normalized form of a URI
+ * <ul>
+ * <li>has path parameters, such as <code>;jsessionid=...</code>, removed from every segment</li>
+ * <li>has percent-encoded UTF-8 sequences decoded.  Malformed sequences are decoded only where they encode ASCII
+ * characters and are otherwise left encoded</li>
+ * <li>keeps an encoded slash, <code>%2F</code>, and an encoded percent sign, <code>%25</code>, encoded, as
+ * <code>%2f</code> and <code>%25</code>, so that an encoded slash is never mistaken for a path separator and no other
+ * character sequence normalizes to the same form</li>
+ * <li>has runs of slashes collapsed into a single slash</li>
+ * <li>has the dot segments <code>.</code> and <code>..</code>, including encoded ones such as <code>%2e%2e</code>,
+ * removed as described in RFC 3986 section 5.2.4.  A <code>..</code> segment above the root is dropped</li>
+ * <li>has ASCII upper case letters converted to lower case</li>
+ * </ul>
+ * The normalized form of a request's URI is computed once and stored as the {@link #NORMALIZED_URI_ATTRIBUTE}
+ * request attribute for use by later filters.
+ */
+public class UriNormalizer {
+
+    public static final String NORMALIZED_URI_ATTRIBUTE = UriNormalizer.class.getName() + ".normalizedUri";
+    private static final String SOURCE_URI_ATTRIBUTE = UriNormalizer.class.getName() + ".sourceUri";
+
+    /**
+     * @param request The request
+     * @return The normalized form of the request URI, computed at most once per request URI
+     */
+    public static String getNormalizedUri(final HttpServletRequest request) {
+        String requestUri = request.getRequestURI();
+        Object normalized = request.getAttribute(NORMALIZED_URI_ATTRIBUTE);
+        // The request URI changes if the request is forwarded
+        if (normalized instanceof String && requestUri != null && requestUri.equals(request.getAttribute(SOURCE_URI_ATTRIBUTE))) {
+            return (String) normalized;
+        }
+
+        String result = normalize(requestUri);
+        request.setAttribute(SOURCE_URI_ATTRIBUTE, requestUri);
+        request.setAttribute(NORMALIZED_URI_ATTRIBUTE, result);
+        return result;
+    }
+
+    /**
+     * @param uri A URI path as returned by {@link HttpServletRequest#getRequestURI()}
+     * @return The normalized form of the URI, or null if the URI is null
+     */
+    public static String normalize(final String uri) {
+        if (uri == null || isNormalized(uri)) {
+            return uri;
+        }
+
+        String path = decode(stripPathParameters(uri));
+
+        StringBuilder collapsed = new StringBuilder(path.length());
+        char previous = 0;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '/' && previous == '/') {
+                continue;
+            }
+            collapsed.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+            previous = c;
+        }
+        return removeDotSegments(collapsed.toString());
+    }
+
+    /**
+     * Removes <code>.</code> and <code>..</code> segments as described in RFC 3986 section 5.2.4, for a path without
+     * empty segments.
+     */
+    static String removeDotSegments(final String path) {
+        if (path.indexOf('.') < 0) {
+            return path;
+        }
+
+        final boolean absolute = path.startsWith("/");
+        final String[] segments = path.split("/", -1);
+        final List<String> output = new ArrayList<String>(segments.length);
+        for (int i = absolute ? 1 : 0; i < segments.length; i++) {
+            final String segment = segments[i];
+            final boolean last = i == segments.length - 1;
+            if (segment.equals(".") || segment.equals("..")) {
+                if (segment.equals("..") && !output.isEmpty()) {
+                    output.remove(output.size() - 1);
+                }
+                if (last) {
+                    // A trailing dot segment leaves the path ending with a slash
+                    output.add("");
+                }
+            } else {
+                output.add(segment);
+            }
+        }
+
+        final StringBuilder result = new StringBuilder(path.length());
+        for (int i = 0; i < output.size(); i++) {
+            if (absolute || i > 0) {
+                result.append('/');
+            }
+            result.append(output.get(i));
+        }
+        return result.length() == 0 && absolute ? "/" : result.toString();
+    }
+
+    private static boolean isNormalized(final String uri) {
+        char previous = 0;
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c == ';' || c == '%' || (c >= 'A' && c <= 'Z') || (c == '/' && previous == '/') || (c == '.' && (previous == '/' || i == 0))) {
+                return false;
+            }
+            previous = c;
+        }
+        return true;
+    }
+
+    private static String stripPathParameters(final String uri) {
+        if (uri.indexOf(';') < 0) {
+            return uri;
+        }
+
+        StringBuilder stripped = new StringBuilder(uri.length());
+        boolean inParameters = false;
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c == ';') {
+                inParameters = true;
+            } else if (c == '/') {
+                inParameters = false;
+            }
+            if (!inParameters) {
+                stripped.append(c);
+            }
+        }
+        return stripped.toString();
+    }
+
+    private static String decode(final String uri) {
+        if (uri.indexOf('%') < 0) {
+            return uri;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(uri.length());
+        int start = 0;
+        for (int i = 0; i < uri.length(); i++) {
+            if (isEscape(uri, i)) {
+                writeUtf8(bytes, uri, start, i);
+                int value = (hexValue(uri.charAt(i + 1)) << 4) | hexValue(uri.charAt(i + 2));
+                if (isKeptEncoded(value)) {
+                    writeUtf8(bytes, keptEncoding(value), 0, 3);
+                } else {
+                    bytes.write(value);
+                }
+                i += 2;
+                start = i + 1;
+            }
+        }
+        writeUtf8(bytes, uri, start, uri.length());
+
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes.toByteArray()))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            return decodeAscii(uri);
+        }
+    }
+
+    /**
+     * Decodes only the escapes for ASCII characters, leaving the rest of the URI as is.
+     */
+    private static String decodeAscii(final String uri) {
+        StringBuilder decoded = new StringBuilder(uri.length());
+        for (int i = 0; i < uri.length(); i++) {
+            if (isEscape(uri, i) && hexValue(uri.charAt(i + 1)) < 8) {
+                int value = (hexValue(uri.charAt(i + 1)) << 4) | hexValue(uri.charAt(i + 2));
+                if (isKeptEncoded(value)) {
+                    decoded.append(keptEncoding(value));
+                } else {
+                    decoded.append((char) value);
+                }
+                i += 2;
+            } else {
+                decoded.append(uri.charAt(i));
+            }
+        }
+        return decoded.toString();
+    }
+
+    /**
+     * @return true for the characters that are left encoded, the slash and the percent sign
+     */
+    private static boolean isKeptEncoded(final int value) {
+        return value == '/' || value == '%';
+    }
+
+    private static String keptEncoding(final int value) {
+        return value == '/' ? "%2f" : "%25";
+    }
+
+    private static boolean isEscape(final String uri, final int index) {
+        return uri.charAt(index) == '%' && index + 2 < uri.length()
+                && hexValue(uri.charAt(index + 1)) >= 0 && hexValue(uri.charAt(index + 2)) >= 0;
+    }
+
+    private static int hexValue(final char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static void writeUtf8(final ByteArrayOutputStream bytes, final String uri, final int start, final int end) {
+        if (start < end) {
+            byte[] encoded = uri.substring(start, end).getBytes(StandardCharsets.UTF_8);
+            bytes.write(encoded, 0, encoded.length);
+        }
+    }
+}
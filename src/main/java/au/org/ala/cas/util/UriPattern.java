@@ -0,0 +1,34 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.util;
+
+/**
+ * A compiled URI pattern, either a regular expression or a glob.
+ *
+ * @see PatternMatchingUtils#getUriPatternList(String, String, PatternMatchingUtils.Syntax, boolean)
+ */
+public interface UriPattern {
+
+	/**
+	 * @param str The string to match
+	 * @return true if the whole string matches the pattern
+	 */
+	boolean matches(String str);
+
+	/**
+	 * @return The source of the pattern, including any context prefix
+	 */
+	String pattern();
+}
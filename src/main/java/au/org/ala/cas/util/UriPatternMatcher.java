@@ -0,0 +1,226 @@
+/***************************************************************************
+ * Copyright (C) 2010 Atlas of Living Australia
+ * All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ ***************************************************************************/
+package au.org.ala.cas.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A list of URI patterns that tests whether a string matches any one of them.
+ * <p>
+ * In adaptive mode the number of hits for each pattern is counted and, every <code>reorderInterval</code> hits on
+ * average, the patterns are re-ordered so that the most frequently matching patterns are tried first.  Older hits
+ * count for less at each re-ordering so the order follows changes in traffic.  The re-ordering only changes how
+ * quickly a match is found, never whether a string matches the list.
+ */
+public class UriPatternMatcher {
+
+	private final static Logger logger = LoggerFactory.getLogger(UriPatternMatcher.class);
+
+	public static final int DEFAULT_REORDER_INTERVAL = 1024;
+
+	private final UriPattern[] patterns;
+	private final int reorderInterval;
+
+	/** Hits per pattern, in configuration order.  Null if not adaptive */
+	private final LongAdder[] hits;
+	/** Decayed hit scores and the hit totals at the previous re-ordering, guarded by reorderLock */
+	private final long[] scores;
+	private final long[] previousHits;
+	private final ReentrantLock reorderLock = new ReentrantLock();
+
+	/** Indexes into patterns in the order they are to be tried.  Replaced, never modified */
+	private volatile int[] order;
+
+	public UriPatternMatcher(List<? extends UriPattern> patterns) {
+		this(patterns, false);
+	}
+
+	public UriPatternMatcher(List<? extends UriPattern> patterns, boolean adaptive) {
+		this(patterns, adaptive ? DEFAULT_REORDER_INTERVAL : 0);
+	}
+
+	/**
+	 * @param patterns The patterns in configuration order
+	 * @param reorderInterval Average number of hits between re-orderings, or 0 to always use configuration order
+	 */
+	public UriPatternMatcher(List<? extends UriPattern> patterns, int reorderInterval) {
+		if (reorderInterval < 0) {
+			throw new IllegalArgumentException("reorderInterval must not be negative");
+		}
+		this.patterns = patterns.toArray(new UriPattern[0]);
+		this.reorderInterval = reorderInterval;
+		this.order = new int[this.patterns.length];
+		for (int i = 0; i < this.order.length; i++) {
+			this.order[i] = i;
+		}
+
+		if (reorderInterval > 0) {
+			this.hits = new LongAdder[this.patterns.length];
+			for (int i = 0; i < this.hits.length; i++) {
+				this.hits[i] = new LongAdder();
+			}
+			this.scores = new long[this.patterns.length];
+			this.previousHits = new long[this.patterns.length];
+		} else {
+			this.hits = null;
+			this.scores = null;
+			this.previousHits = null;
+		}
+	}
+
+	public boolean matches(String str) {
+		return indexOf(str) >= 0;
+	}
+
+	/**
+	 * @param str The string to match
+	 * @return The configuration order index of a pattern that matches the string, or -1 if none match
+	 */
+	public int indexOf(String str) {
+		for (int index : order) {
+			UriPattern pattern = patterns[index];
+			logger.trace("Matching string '{}' against Pattern '{}'", str, pattern);
+			if (pattern.matches(str)) {
+				logger.trace("Matches!");
+				if (hits != null) {
+					recordHit(index);
+				}
+				return index;
+			} else {
+				logger.trace("No match");
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Finds the pattern that {@link #indexOf(String)} would currently report, without counting a hit.  Used to explain
+	 * how a string is matched without disturbing the adaptive order.
+	 *
+	 * @param str The string to match
+	 * @return The configuration order index of a pattern that matches the string, or -1 if none match
+	 */
+	public int find(String str) {
+		for (int index : order) {
+			if (patterns[index].matches(str)) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Matches a string against every pattern, rather than stopping at the first match, without counting any hits.  Used
+	 * to warm up the patterns before the first requests arrive.
+	 *
+	 * @param str The string to match
+	 * @return The number of patterns that match the string
+	 */
+	public int warmUp(String str) {
+		int matches = 0;
+		for (UriPattern pattern : patterns) {
+			if (pattern.matches(str)) {
+				matches++;
+			}
+		}
+		return matches;
+	}
+
+	public boolean isEmpty() {
+		return patterns.length == 0;
+	}
+
+	public boolean isAdaptive() {
+		return hits != null;
+	}
+
+	/**
+	 * @return The patterns in configuration order
+	 */
+	public List<UriPattern> getPatterns() {
+		return Collections.unmodifiableList(Arrays.asList(patterns));
+	}
+
+	/**
+	 * @return The patterns in the order they are currently tried
+	 */
+	public List<UriPattern> getOrderedPatterns() {
+		List<UriPattern> ordered = new ArrayList<UriPattern>(patterns.length);
+		for (int index : order) {
+			ordered.add(patterns[index]);
+		}
+		return ordered;
+	}
+
+	/**
+	 * @param index Configuration order index of a pattern
+	 * @return The number of hits for the pattern, or 0 if not adaptive
+	 */
+	public long getHits(int index) {
+		return hits == null ? 0 : hits[index].sum();
+	}
+
+	private void recordHit(int index) {
+		hits[index].increment();
+		// Sample rather than count calls so that matching threads do not contend on a shared counter
+		if (ThreadLocalRandom.current().nextInt(reorderInterval) == 0) {
+			reorder();
+		}
+	}
+
+	/**
+	 * Re-orders the patterns by their decayed hit scores.  If another thread is already re-ordering then this is a no-op.
+	 */
+	void reorder() {
+		if (!reorderLock.tryLock()) {
+			return;
+		}
+		try {
+			for (int i = 0; i < patterns.length; i++) {
+				long total = hits[i].sum();
+				scores[i] = scores[i] / 2 + (total - previousHits[i]);
+				previousHits[i] = total;
+			}
+
+			// Stable insertion sort, so that patterns with equal scores stay in configuration order
+			int[] newOrder = new int[patterns.length];
+			for (int i = 0; i < newOrder.length; i++) {
+				int j = i;
+				while (j > 0 && scores[newOrder[j - 1]] < scores[i]) {
+					newOrder[j] = newOrder[j - 1];
+					j--;
+				}
+				newOrder[j] = i;
+			}
+
+			if (!Arrays.equals(order, newOrder)) {
+				logger.debug("Re-ordered patterns to {}", Arrays.toString(newOrder));
+				order = newOrder;
+			}
+		} finally {
+			reorderLock.unlock();
+		}
+	}
+}
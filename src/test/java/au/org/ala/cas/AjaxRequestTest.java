@@ -0,0 +1,57 @@
+package au.org.ala.cas;
+
+import java.util.EnumSet;
+
+import au.org.ala.cas.client.AjaxAwareAuthenticationRedirectStrategy;
+import au.org.ala.cas.util.AjaxRequestDetector;
+import junit.framework.TestCase;
+
+public class AjaxRequestTest extends TestCase {
+
+	private static final String LOGIN_URL = "https://auth.example.org/cas/login?service=https%3A%2F%2Fapp.example.org%2F&gateway=true";
+
+	public void testDetection() {
+		AjaxRequestDetector detector = AjaxRequestDetector.forSignals(null);
+		assertTrue(detector.isAjax(new ServletMocks.Request("/").header("X-Requested-With", "XMLHttpRequest").proxy()));
+		assertTrue(detector.isAjax(new ServletMocks.Request("/").header("Sec-Fetch-Mode", "cors").proxy()));
+		assertTrue(detector.isAjax(new ServletMocks.Request("/").header("Sec-Fetch-Mode", "same-origin").proxy()));
+		assertTrue(detector.isAjax(new ServletMocks.Request("/").header("Accept", "application/json, text/plain, */*").proxy()));
+		assertTrue(detector.isAjax(new ServletMocks.Request("/").header("Accept", "application/problem+JSON").proxy()));
+
+		assertFalse(detector.isAjax(new ServletMocks.Request("/").proxy()));
+		assertFalse(detector.isAjax(new ServletMocks.Request("/").header("Sec-Fetch-Mode", "navigate").proxy()));
+		// Page assets such as images, scripts and style sheets
+		assertFalse(detector.isAjax(new ServletMocks.Request("/").header("Sec-Fetch-Mode", "no-cors").proxy()));
+		assertFalse(detector.isAjax(new ServletMocks.Request("/").header("Accept", "text/html,application/json;q=0.9").proxy()));
+	}
+
+	public void testConfiguredSignals() {
+		AjaxRequestDetector detector = AjaxRequestDetector.forSignals("x-requested-with, unknown");
+		assertTrue(detector.isAjax(new ServletMocks.Request("/").header("X-Requested-With", "XMLHttpRequest").proxy()));
+		assertFalse(detector.isAjax(new ServletMocks.Request("/").header("Sec-Fetch-Mode", "cors").proxy()));
+
+		detector = new AjaxRequestDetector(EnumSet.of(AjaxRequestDetector.Signal.SEC_FETCH_MODE));
+		assertTrue(detector.isAjax(new ServletMocks.Request("/").header("Sec-Fetch-Mode", "cors").proxy()));
+		assertFalse(detector.isAjax(new ServletMocks.Request("/").header("Accept", "application/json").proxy()));
+	}
+
+	public void testRedirectStrategy() throws Exception {
+		AjaxAwareAuthenticationRedirectStrategy strategy = new AjaxAwareAuthenticationRedirectStrategy(AjaxRequestDetector.forSignals(null));
+
+		ServletMocks.Response ajax = new ServletMocks.Response();
+		strategy.redirect(new ServletMocks.Request("/").header("Sec-Fetch-Mode", "cors").proxy(), ajax.proxy(), LOGIN_URL);
+		assertEquals(401, ajax.getStatus());
+		assertTrue(ajax.getContentType().startsWith("application/json"));
+		assertEquals("{\"error\":\"authentication_required\",\"loginUrl\":\"" + LOGIN_URL + "\"}", ajax.getBody());
+
+		ServletMocks.Response navigation = new ServletMocks.Response();
+		strategy.redirect(new ServletMocks.Request("/").header("Sec-Fetch-Mode", "navigate").proxy(), navigation.proxy(), LOGIN_URL);
+		assertEquals(302, navigation.getStatus());
+		assertEquals(LOGIN_URL, navigation.getRedirect());
+
+		ServletMocks.Response image = new ServletMocks.Response();
+		strategy.redirect(new ServletMocks.Request("/").header("Sec-Fetch-Mode", "no-cors").proxy(), image.proxy(), LOGIN_URL);
+		assertEquals(302, image.getStatus());
+		assertEquals(LOGIN_URL, image.getRedirect());
+	}
+}
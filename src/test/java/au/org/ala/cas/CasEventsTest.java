@@ -0,0 +1,86 @@
+package au.org.ala.cas;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.EventType;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import au.org.ala.cas.client.AjaxAwareGatewayStorage;
+import au.org.ala.cas.client.UriFilter;
+import au.org.ala.cas.jfr.CasEvents;
+import au.org.ala.cas.jfr.DelegateFilterEvent;
+import au.org.ala.cas.jfr.GatewayDecisionEvent;
+import au.org.ala.cas.jfr.UriFilterRoutingEvent;
+import junit.framework.TestCase;
+
+public class CasEventsTest extends TestCase {
+
+	public void testDisabledByDefault() {
+		assertFalse(EventType.getEventType(UriFilterRoutingEvent.class).isEnabled());
+		assertFalse(EventType.getEventType(DelegateFilterEvent.class).isEnabled());
+		assertFalse(EventType.getEventType(GatewayDecisionEvent.class).isEnabled());
+	}
+
+	public void testRecording() throws Exception {
+		Map<String, String> initParams = new HashMap<String, String>();
+		initParams.put("filterClass", UriFilterTest.RecordingFilter.class.getName());
+		Map<String, String> contextParams = new HashMap<String, String>();
+		contextParams.put(UriFilter.URI_FILTER_PATTERN, "/admin/.*");
+		contextParams.put(UriFilter.URI_EXCLUSION_FILTER_PATTERN, "/admin/public/.*");
+		UriFilter filter = new UriFilter();
+		filter.init(ServletMocks.filterConfig(initParams, contextParams, "/webapp"));
+		AjaxAwareGatewayStorage gatewayStorage = new AjaxAwareGatewayStorage();
+
+		File file = File.createTempFile("cas-events", ".jfr");
+		try {
+			try (Recording recording = new Recording()) {
+				for (String name : CasEvents.NAMES) {
+					recording.enable(name);
+				}
+				recording.start();
+				filter.doFilter(new ServletMocks.Request("/webapp/admin/users").proxy(), new ServletMocks.Response().proxy(), new ServletMocks.Chain());
+				filter.doFilter(new ServletMocks.Request("/webapp/admin/public/help").proxy(), new ServletMocks.Response().proxy(), new ServletMocks.Chain());
+				filter.doFilter(new ServletMocks.Request("/webapp/other").proxy(), new ServletMocks.Response().proxy(), new ServletMocks.Chain());
+				gatewayStorage.storeGatewayInformation(new ServletMocks.Request("/webapp/api").header("X-Requested-With", "XMLHttpRequest").proxy(), "https://example.org/webapp/api");
+				recording.stop();
+				recording.dump(file.toPath());
+			}
+
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+			Map<String, RecordedEvent> routing = new HashMap<String, RecordedEvent>();
+			int delegate = 0;
+			int gateway = 0;
+			for (RecordedEvent event : events) {
+				String name = event.getEventType().getName();
+				if (name.equals(UriFilterRoutingEvent.NAME)) {
+					routing.put(event.getString("uri"), event);
+				} else if (name.equals(DelegateFilterEvent.NAME)) {
+					delegate++;
+					assertEquals(UriFilterTest.RecordingFilter.class.getName(), event.getString("filterClass"));
+				} else if (name.equals(GatewayDecisionEvent.NAME)) {
+					gateway++;
+					assertTrue(event.getBoolean("ajax"));
+					assertFalse(event.getBoolean("result"));
+				}
+			}
+
+			assertEquals(3, routing.size());
+			assertEquals(UriFilter.URI_FILTER_PATTERN, routing.get("/webapp/admin/users").getString("tier"));
+			assertTrue(routing.get("/webapp/admin/users").getBoolean("forwarded"));
+			assertEquals(UriFilter.URI_EXCLUSION_FILTER_PATTERN, routing.get("/webapp/admin/public/help").getString("tier"));
+			assertEquals(0, routing.get("/webapp/admin/public/help").getInt("patternIndex"));
+			assertEquals("none", routing.get("/webapp/other").getString("tier"));
+			assertEquals(-1, routing.get("/webapp/other").getInt("patternIndex"));
+			assertEquals(1, delegate);
+			assertEquals(1, gateway);
+		} finally {
+			file.delete();
+			filter.destroy();
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package au.org.ala.cas;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.apereo.cas.client.authentication.AttributePrincipalImpl;
+import org.apereo.cas.client.validation.Assertion;
+import org.apereo.cas.client.validation.AssertionImpl;
+
+import au.org.ala.cas.client.CompactAssertion;
+import au.org.ala.cas.client.CompactAttributePrincipal;
+import au.org.ala.cas.util.AuthenticationUtils;
+import au.org.ala.cas.util.CompactAttributeMap;
+import junit.framework.TestCase;
+
+public class CompactAssertionTest extends TestCase {
+
+	public void testCompactAttributes() {
+		Map<String, Object> attributes = new HashMap<String, Object>();
+		attributes.put(new String("email"), "user@example.org");
+		attributes.put(new String("role"), new String("ROLE_USER, ROLE_ADMIN"));
+		attributes.put("firstname", null);
+
+		CompactAttributeMap map = CompactAttributeMap.copyOf(attributes);
+		assertEquals(attributes, map);
+		assertEquals(attributes.hashCode(), map.hashCode());
+		assertEquals("user@example.org", map.get("email"));
+		assertTrue(map.containsKey("firstname"));
+		assertNull(map.get("lastname"));
+		assertSame(CompactAttributeMap.EMPTY, CompactAttributeMap.copyOf(new HashMap<String, Object>()));
+		try {
+			map.put("lastname", "User");
+			fail("CompactAttributeMap should be immutable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	public void testSharedRoles() {
+		CompactAttributePrincipal first = CompactAttributePrincipal.compact(principal("first", new String("ROLE_USER, ROLE_ADMIN")), "role", false);
+		CompactAttributePrincipal second = CompactAttributePrincipal.compact(principal("second", new String("ROLE_USER, ROLE_ADMIN")), "role", false);
+
+		assertEquals(new HashSet<String>(Arrays.asList("ROLE_USER", "ROLE_ADMIN")), first.getRoles());
+		assertSame(first.getRoles(), second.getRoles());
+		assertSame(first.getAttributes().get("role"), second.getAttributes().get("role"));
+		assertEquals("ROLE_USER, ROLE_ADMIN", second.getAttributes().get("role"));
+
+		CompactAttributePrincipal list = CompactAttributePrincipal.compact(principal("third", Arrays.asList("ROLE_USER", "ROLE_ADMIN")), "role", false);
+		assertEquals(Arrays.asList("ROLE_USER", "ROLE_ADMIN"), list.getAttributes().get("role"));
+		assertEquals(first.getRoles(), list.getRoles());
+
+		assertNull(first.getProxyTicketFor("https://example.org/service"));
+	}
+
+	public void testCompactAssertion() {
+		Date now = new Date();
+		Assertion original = new AssertionImpl(principal("user", "ROLE_USER"), new Date(now.getTime() - 1000),
+				new Date(now.getTime() + 60000), now, new HashMap<String, Object>());
+
+		Assertion compact = CompactAssertion.compact(original, AuthenticationUtils.ATTR_ROLES, false);
+		assertTrue(compact instanceof CompactAssertion);
+		assertSame(compact, CompactAssertion.compact(compact, AuthenticationUtils.ATTR_ROLES, false));
+		assertEquals("user", compact.getPrincipal().getName());
+		assertEquals(original.getPrincipal().getAttributes(), compact.getPrincipal().getAttributes());
+		assertEquals(original.getValidFromDate(), compact.getValidFromDate());
+		assertEquals(original.getValidUntilDate(), compact.getValidUntilDate());
+		assertEquals(original.getAuthenticationDate(), compact.getAuthenticationDate());
+		assertTrue(compact.isValid());
+		assertTrue(compact.getContext().isEmpty());
+
+		Map<String, Serializable> context = new HashMap<String, Serializable>();
+		context.put("authenticationMethod", "LdapAuthenticationHandler");
+		Assertion withContext = CompactAssertion.compact(new AssertionImpl(principal("user", "ROLE_USER"), new HashMap<String, Object>(), context),
+				AuthenticationUtils.ATTR_ROLES, false);
+		assertEquals(context, withContext.getContext());
+
+		Assertion expired = CompactAssertion.compact(new AssertionImpl(principal("user", "ROLE_USER"), new Date(now.getTime() - 2000),
+				new Date(now.getTime() - 1000), now, new HashMap<String, Object>()), AuthenticationUtils.ATTR_ROLES, false);
+		assertFalse(expired.isValid());
+	}
+
+	public void testUserRoles() {
+		CompactAttributePrincipal principal = CompactAttributePrincipal.compact(principal("user", "ROLE_USER,ROLE_EDITOR"), AuthenticationUtils.ATTR_ROLES, false);
+		assertEquals(new HashSet<String>(Arrays.asList("ROLE_USER", "ROLE_EDITOR")),
+				AuthenticationUtils.getUserRoles(new ServletMocks.Request("/").principal(principal).proxy()));
+	}
+
+	public void testSerialization() throws Exception {
+		Map<String, Object> assertionAttributes = new HashMap<String, Object>();
+		assertionAttributes.put("isFromNewLogin", "true");
+		assertionAttributes.put("credentialType", new ArrayList<String>(Arrays.asList("UsernamePasswordCredential")));
+		assertionAttributes.put("longTermAuthenticationRequestTokenUsed", Boolean.FALSE);
+		Date now = new Date();
+		AttributePrincipalImpl original = principal("user", new ArrayList<String>(Arrays.asList("ROLE_USER", "ROLE_\u00c9DITEUR")));
+		original.getAttributes().put("firstname", null);
+		Assertion compact = CompactAssertion.compact(new AssertionImpl(original, new Date(now.getTime() - 1000),
+				null, now, assertionAttributes), AuthenticationUtils.ATTR_ROLES, false);
+
+		Assertion copy = (Assertion) roundTrip(compact);
+		assertTrue(copy instanceof CompactAssertion);
+		assertEquals(compact.getValidFromDate(), copy.getValidFromDate());
+		assertNull(copy.getValidUntilDate());
+		assertEquals(compact.getAuthenticationDate(), copy.getAuthenticationDate());
+		assertEquals(assertionAttributes, copy.getAttributes());
+		assertEquals("user", copy.getPrincipal().getName());
+		assertEquals(original.getAttributes(), copy.getPrincipal().getAttributes());
+		assertSame(((CompactAttributePrincipal) compact.getPrincipal()).getRoles(), ((CompactAttributePrincipal) copy.getPrincipal()).getRoles());
+
+		CompactAttributePrincipal principal = (CompactAttributePrincipal) roundTrip(compact.getPrincipal());
+		assertEquals(compact.getPrincipal(), principal);
+		assertEquals(original.getAttributes(), principal.getAttributes());
+		assertEquals(AuthenticationUtils.ATTR_ROLES, principal.getRoleAttribute());
+
+		assertTrue(serialize(compact).length < serialize(new AssertionImpl(original, new Date(now.getTime() - 1000),
+				null, now, assertionAttributes)).length / 2);
+	}
+
+	public void testContextSerialization() throws Exception {
+		Map<String, Serializable> context = new HashMap<String, Serializable>();
+		context.put("authenticationMethod", "LdapAuthenticationHandler");
+		context.put("successfulAuthenticationHandlers", new ArrayList<String>(Arrays.asList("LdapAuthenticationHandler")));
+		context.put("authenticationCount", Integer.valueOf(2));
+		Assertion compact = CompactAssertion.compact(new AssertionImpl(principal("user", "ROLE_USER"), new HashMap<String, Object>(), context),
+				AuthenticationUtils.ATTR_ROLES, false);
+
+		Assertion copy = (Assertion) roundTrip(compact);
+		assertEquals(context, copy.getContext());
+		assertEquals("user", copy.getPrincipal().getName());
+
+		assertTrue(((Assertion) roundTrip(CompactAssertion.compact(new AssertionImpl("user"), AuthenticationUtils.ATTR_ROLES, false))).getContext().isEmpty());
+	}
+
+	public void testCorruptSerialization() throws Exception {
+		byte[] bytes = serialize(CompactAttributePrincipal.compact(new AttributePrincipalImpl("\u00ffx"), AuthenticationUtils.ATTR_ROLES, false));
+		// Replace the length of the user name with the start of a length of hundreds of megabytes
+		byte[] name = { 3, (byte) 0xC3, (byte) 0xBF, 'x' };
+		int index = indexOf(bytes, name);
+		assertTrue(index > 0);
+		bytes[index] = (byte) 0xFF;
+		try {
+			new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+			fail("Corrupt length not detected");
+		} catch (InvalidObjectException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid length"));
+		}
+	}
+
+	private static int indexOf(byte[] bytes, byte[] sequence) {
+		for (int i = 0; i + sequence.length <= bytes.length; i++) {
+			if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + sequence.length), sequence)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	static byte[] serialize(Object o) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(o);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	static Object roundTrip(Object o) throws IOException, ClassNotFoundException {
+		return new ObjectInputStream(new ByteArrayInputStream(serialize(o))).readObject();
+	}
+
+	private static AttributePrincipalImpl principal(String name, Object roles) {
+		Map<String, Object> attributes = new HashMap<String, Object>();
+		attributes.put(new String("email"), name + "@example.org");
+		attributes.put(new String("role"), roles);
+		return new AttributePrincipalImpl(name, attributes);
+	}
+}
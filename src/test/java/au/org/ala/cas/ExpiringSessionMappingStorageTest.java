@@ -0,0 +1,122 @@
+package au.org.ala.cas;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.servlet.http.HttpSession;
+
+import au.org.ala.cas.client.ExpiringSessionMappingStorage;
+import junit.framework.TestCase;
+
+public class ExpiringSessionMappingStorageTest extends TestCase {
+
+	private ExpiringSessionMappingStorage storage;
+
+	@Override
+	protected void setUp() throws Exception {
+		storage = new ExpiringSessionMappingStorage(4, Long.MAX_VALUE / 2);
+	}
+
+	public void testRemoveByMappingId() {
+		HttpSession session = new ServletMocks.Session("session-1").proxy();
+		storage.addSessionById("ST-1", session);
+		assertEquals(1, storage.size());
+
+		assertSame(session, storage.removeSessionByMappingId("ST-1"));
+		assertNull(storage.removeSessionByMappingId("ST-1"));
+		assertEquals(0, storage.size());
+
+		// The session id mapping has gone too, so re-adding the session gives a single mapping
+		storage.addSessionById("ST-2", session);
+		assertEquals(1, storage.size());
+	}
+
+	public void testConcurrentRemoveByMappingId() throws Exception {
+		for (int i = 0; i < 1000; i++) {
+			final String mappingId = "ST-" + i;
+			storage.addSessionById(mappingId, new ServletMocks.Session("session-" + i).proxy());
+			final CountDownLatch start = new CountDownLatch(1);
+			final AtomicInteger removed = new AtomicInteger();
+			Thread[] threads = new Thread[8];
+			for (int j = 0; j < threads.length; j++) {
+				threads[j] = new Thread(() -> {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					if (storage.removeSessionByMappingId(mappingId) != null) {
+						removed.incrementAndGet();
+					}
+				});
+				threads[j].start();
+			}
+			start.countDown();
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			assertEquals(1, removed.get());
+		}
+		assertEquals(0, storage.size());
+	}
+
+	public void testRemoveBySessionId() {
+		HttpSession first = new ServletMocks.Session("session-1").proxy();
+		HttpSession second = new ServletMocks.Session("session-2").proxy();
+		storage.addSessionById("ST-1", first);
+		storage.addSessionById("ST-2", second);
+
+		storage.removeBySessionById("session-1");
+		storage.removeBySessionById("unknown");
+		assertNull(storage.removeSessionByMappingId("ST-1"));
+		assertSame(second, storage.removeSessionByMappingId("ST-2"));
+	}
+
+	public void testRemappedSession() {
+		HttpSession session = new ServletMocks.Session("session-1").proxy();
+		storage.addSessionById("ST-1", session);
+		storage.addSessionById("ST-2", session);
+
+		assertEquals(1, storage.size());
+		assertNull(storage.removeSessionByMappingId("ST-1"));
+		assertSame(session, storage.removeSessionByMappingId("ST-2"));
+	}
+
+	public void testMappingIdTakenOver() {
+		HttpSession first = new ServletMocks.Session("session-1").proxy();
+		HttpSession second = new ServletMocks.Session("session-2").proxy();
+		storage.addSessionById("ST-1", first);
+		storage.addSessionById("ST-1", second);
+		assertEquals(1, storage.size());
+
+		// The first session no longer refers to the mapping id, so removing it leaves the second session's mapping
+		storage.removeBySessionById("session-1");
+		assertSame(second, storage.removeSessionByMappingId("ST-1"));
+	}
+
+	public void testSweep() {
+		ServletMocks.Session invalidated = new ServletMocks.Session("invalidated");
+		ServletMocks.Session expired = new ServletMocks.Session("expired").lastAccessedTime(System.currentTimeMillis() - 3600000);
+		HttpSession active = new ServletMocks.Session("active").proxy();
+		storage.addSessionById("ST-1", invalidated.proxy());
+		storage.addSessionById("ST-2", expired.proxy());
+		storage.addSessionById("ST-3", active);
+		invalidated.proxy().invalidate();
+
+		assertEquals(2, storage.sweep());
+		assertEquals(1, storage.size());
+		assertSame(active, storage.removeSessionByMappingId("ST-3"));
+	}
+
+	public void testSweepWhenDue() throws Exception {
+		storage = new ExpiringSessionMappingStorage(1, 0);
+		ServletMocks.Session invalidated = new ServletMocks.Session("invalidated");
+		storage.addSessionById("ST-1", invalidated.proxy());
+		invalidated.proxy().invalidate();
+
+		Thread.sleep(2);
+		storage.addSessionById("ST-2", new ServletMocks.Session("active").proxy());
+		assertEquals(1, storage.size());
+		assertNull(storage.removeSessionByMappingId("ST-1"));
+	}
+}
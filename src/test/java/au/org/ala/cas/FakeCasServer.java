@@ -0,0 +1,207 @@
+package au.org.ala.cas;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * In-process stand-in for a CAS server's REST ticket endpoints and for a CAS protected web service, so that the
+ * {@link au.org.ala.cas.client.WebServiceAuthenticationHelper} flow can be exercised without a real CAS.
+ * <ul>
+ * <li><code>POST /cas/v1/tickets/</code> with valid credentials returns 201 and a Ticket Granting Ticket</li>
+ * <li><code>POST /cas/v1/tickets/{TGT}</code> returns 200 and a single use Service Ticket for the posted service</li>
+ * <li><code>GET /service/**?ticket={ST}</code> returns 200 if the ticket was issued for that service, otherwise 403</li>
+ * </ul>
+ * Proxy tickets, which a real CAS issues against a Proxy Granting Ticket, are issued in process by
+ * {@link #issueProxyTicket(String)} and are accepted by the protected service in the same way as service tickets.
+ */
+public class FakeCasServer implements Closeable {
+
+	public static final String TICKETS_PATH = "/cas/v1/tickets/";
+	public static final String SERVICE_PATH = "/service/";
+
+	private final MockWebServer server = new MockWebServer();
+	private final String userName;
+	private final String password;
+
+	private final Map<String, String> ticketGrantingTickets = new ConcurrentHashMap<String, String>();
+	private final Map<String, String> serviceTickets = new ConcurrentHashMap<String, String>();
+	private final AtomicInteger ticketCounter = new AtomicInteger();
+
+	private final AtomicInteger ticketGrantingRequests = new AtomicInteger();
+	private final AtomicInteger serviceTicketRequests = new AtomicInteger();
+	private final AtomicInteger serviceRequests = new AtomicInteger();
+	private final AtomicInteger proxyTicketRequests = new AtomicInteger();
+
+	private volatile long latencyMillis = 0;
+	private volatile CountDownLatch hold;
+
+	public FakeCasServer(String userName, String password) throws IOException {
+		this.userName = userName;
+		this.password = password;
+		server.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+				CountDownLatch held = hold;
+				if (held != null) {
+					held.await(30, TimeUnit.SECONDS);
+				}
+				MockResponse response = route(request);
+				if (latencyMillis > 0) {
+					response.setHeadersDelay(latencyMillis, TimeUnit.MILLISECONDS);
+				}
+				return response;
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * @return The CAS server URI as expected by {@link au.org.ala.cas.client.WebServiceAuthenticationHelper}, i.e. without a trailing slash
+	 */
+	public String getCasServerUrl() {
+		String url = server.url("/").toString();
+		return url.substring(0, url.length() - 1);
+	}
+
+	/**
+	 * @param path Path below the protected service root
+	 * @return URI of the fake protected service
+	 */
+	public String getServiceUrl(String path) {
+		return server.url(SERVICE_PATH + path).toString();
+	}
+
+	/**
+	 * Simulates network and server latency by delaying every response.
+	 * @param latencyMillis Delay in milliseconds before response headers are sent
+	 */
+	public void setLatency(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+	/**
+	 * Holds every request until the returned latch is counted down, so that a test can observe what a client does while
+	 * it waits for CAS.
+	 * @return The latch releasing the held requests
+	 */
+	public CountDownLatch hold() {
+		CountDownLatch held = new CountDownLatch(1);
+		hold = held;
+		return held;
+	}
+
+	public int getTicketGrantingRequests() {
+		return ticketGrantingRequests.get();
+	}
+
+	public int getServiceTicketRequests() {
+		return serviceTicketRequests.get();
+	}
+
+	public int getServiceRequests() {
+		return serviceRequests.get();
+	}
+
+	public int getProxyTicketRequests() {
+		return proxyTicketRequests.get();
+	}
+
+	/**
+	 * @param service The service URI
+	 * @return A single use proxy ticket for the service
+	 */
+	public String issueProxyTicket(String service) {
+		proxyTicketRequests.incrementAndGet();
+		String proxyTicket = "PT-" + ticketCounter.incrementAndGet() + "-fake";
+		serviceTickets.put(proxyTicket, HttpUrl.get(service).encodedPath());
+		return proxyTicket;
+	}
+
+	public void close() throws IOException {
+		server.shutdown();
+	}
+
+	private MockResponse route(RecordedRequest request) {
+		String path = request.getPath();
+		if ("POST".equals(request.getMethod()) && path.startsWith(TICKETS_PATH)) {
+			String ticketGrantingTicket = path.substring(TICKETS_PATH.length());
+			Map<String, String> form = parseForm(request.getBody().readUtf8());
+			if (ticketGrantingTicket.isEmpty()) {
+				return grantTicket(form);
+			}
+			return issueServiceTicket(ticketGrantingTicket, form);
+		} else if ("GET".equals(request.getMethod()) && path.startsWith(SERVICE_PATH)) {
+			return serve(request);
+		}
+		return new MockResponse().setResponseCode(404).setBody("Not found");
+	}
+
+	private MockResponse grantTicket(Map<String, String> form) {
+		ticketGrantingRequests.incrementAndGet();
+		if (!userName.equals(form.get("username")) || !password.equals(form.get("password"))) {
+			return new MockResponse().setResponseCode(401).setBody("Authentication failed");
+		}
+		String ticketGrantingTicket = "TGT-" + ticketCounter.incrementAndGet() + "-fake";
+		ticketGrantingTickets.put(ticketGrantingTicket, userName);
+		String location = getCasServerUrl() + TICKETS_PATH + ticketGrantingTicket;
+		return new MockResponse()
+				.setResponseCode(201)
+				.setHeader("Location", location)
+				.setBody("<html><head><title>201 Created</title></head><body><h1>TGT Created</h1><form action=\"" + location + "\" method=\"POST\"></form></body></html>");
+	}
+
+	private MockResponse issueServiceTicket(String ticketGrantingTicket, Map<String, String> form) {
+		serviceTicketRequests.incrementAndGet();
+		String service = form.get("service");
+		if (!ticketGrantingTickets.containsKey(ticketGrantingTicket) || service == null) {
+			return new MockResponse().setResponseCode(404).setBody("Ticket Granting Ticket not found");
+		}
+		String serviceTicket = "ST-" + ticketCounter.incrementAndGet() + "-fake";
+		serviceTickets.put(serviceTicket, HttpUrl.get(service).encodedPath());
+		return new MockResponse().setResponseCode(200).setBody(serviceTicket);
+	}
+
+	private MockResponse serve(RecordedRequest request) {
+		serviceRequests.incrementAndGet();
+		HttpUrl url = request.getRequestUrl();
+		String serviceTicket = url.queryParameter("ticket");
+		String service = serviceTicket == null ? null : serviceTickets.remove(serviceTicket);
+		if (service == null || !service.equals(url.encodedPath())) {
+			return new MockResponse().setResponseCode(403).setBody("Invalid service ticket");
+		}
+		return new MockResponse().setResponseCode(200).setBody("{\"service\":\"" + service + "\"}");
+	}
+
+	private static Map<String, String> parseForm(String body) {
+		Map<String, String> form = new HashMap<String, String>();
+		for (String pair : body.split("&")) {
+			int index = pair.indexOf('=');
+			if (index > 0) {
+				form.put(decode(pair.substring(0, index)), decode(pair.substring(index + 1)));
+			}
+		}
+		return form;
+	}
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -4,7 +4,12 @@ import java.util.List;
 import java.util.regex.Pattern;
 
 import junit.framework.TestCase;
+import au.org.ala.cas.util.GlobUriPattern;
 import au.org.ala.cas.util.PatternMatchingUtils;
+import au.org.ala.cas.util.PatternMatchingUtils.Syntax;
+import au.org.ala.cas.util.UriPattern;
+import au.org.ala.cas.util.UriNormalizer;
+import au.org.ala.cas.util.UriPatternMatcher;
 
 public class PatternMatchingTest extends TestCase {
 
@@ -37,4 +42,126 @@ public class PatternMatchingTest extends TestCase {
 			assertTrue(e instanceof IllegalArgumentException);
 		}
 	}
+
+	public void testAdaptiveMatches() {
+		List<UriPattern> patterns = PatternMatchingUtils.getUriPatternList("/webapp", "/admin.*,/occurrences/\\d+,/ws/.*,/js/.*", Syntax.REGEX, true);
+		// Re-order on every hit
+		UriPatternMatcher matcher = new UriPatternMatcher(patterns, 1);
+		assertTrue(matcher.isAdaptive());
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals(2, matcher.indexOf("/webapp/ws/occurrences"));
+		}
+		assertEquals(10, matcher.getHits(2));
+		assertEquals("/webapp/ws/.*", matcher.getOrderedPatterns().get(0).pattern());
+
+		// The order follows changes in traffic
+		for (int i = 0; i < 10; i++) {
+			assertEquals(3, matcher.indexOf("/webapp/js/app.js"));
+		}
+		assertEquals("/webapp/js/.*", matcher.getOrderedPatterns().get(0).pattern());
+		// Configuration order is unchanged
+		assertEquals(patterns, matcher.getPatterns());
+
+		// Re-ordering never changes whether a string matches
+		assertTrue(matcher.matches("/webapp/admin/users"));
+		assertTrue(matcher.matches("/webapp/occurrences/35661424"));
+		assertFalse(matcher.matches("/webapp/occurrences/abc"));
+		assertFalse(matcher.matches("/favicon.ico"));
+
+		UriPatternMatcher fixed = PatternMatchingUtils.getPatternMatcher("/webapp", "/admin.*,/ws/.*", false);
+		assertFalse(fixed.isAdaptive());
+		assertEquals(1, fixed.indexOf("/webapp/ws/occurrences"));
+		assertEquals(0, fixed.getHits(1));
+		assertEquals("/webapp/admin.*", fixed.getOrderedPatterns().get(0).pattern());
+	}
+
+	public void testFindFollowsAdaptiveOrder() {
+		List<UriPattern> patterns = PatternMatchingUtils.getUriPatternList("/webapp", "/admin.*,.*/users", Syntax.REGEX, true);
+		UriPatternMatcher matcher = new UriPatternMatcher(patterns, 1);
+		assertEquals(0, matcher.find("/webapp/admin/users"));
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals(1, matcher.indexOf("/webapp/public/users"));
+		}
+		// Both patterns match, and the one now tried first is reported without counting a hit
+		assertEquals(1, matcher.find("/webapp/admin/users"));
+		assertEquals(1, matcher.indexOf("/webapp/admin/users"));
+		assertEquals(11, matcher.getHits(1));
+		assertEquals(0, matcher.getHits(0));
+		assertEquals(-1, matcher.find("/webapp/other"));
+	}
+
+	public void testNormalizedMatches() {
+		assertEquals("/webapp/occurrences/search", UriNormalizer.normalize("/webapp/occurrences/search"));
+		assertEquals("/webapp/occurrences/search", UriNormalizer.normalize("/WebApp//Occurrences///search;jsessionid=ABC123"));
+		assertEquals("/webapp/admin/users", UriNormalizer.normalize("/webapp;v=1/%41dmin/users"));
+		// Encoded slashes and percent signs stay encoded, so that they cannot become path separators
+		assertEquals("/webapp/images%2f%2fa b.png", UriNormalizer.normalize("/webapp/images%2F%2Fa%20b.png"));
+		assertEquals("/webapp/admin%2fusers", UriNormalizer.normalize("/webapp/admin%2fusers"));
+		assertEquals("/webapp/a%252f", UriNormalizer.normalize("/webapp/a%252F"));
+		// Dot segments are removed, after decoding
+		assertEquals("/webapp/admin/users", UriNormalizer.normalize("/webapp/public/../admin/users"));
+		assertEquals("/webapp/admin/users", UriNormalizer.normalize("/webapp/public/%2e%2E/admin/./users"));
+		assertEquals("/webapp/admin/", UriNormalizer.normalize("/webapp/admin/users/.."));
+		assertEquals("/admin", UriNormalizer.normalize("/../../admin"));
+		assertEquals("/webapp/..%2fadmin", UriNormalizer.normalize("/webapp/..%2Fadmin"));
+		assertEquals("/webapp/.hidden/a..b", UriNormalizer.normalize("/webapp/.hidden/a..b"));
+		assertEquals("/webapp/species/acacia \u00e9", UriNormalizer.normalize("/webapp/species/Acacia%20%C3%A9"));
+		// Malformed escapes are left as is
+		assertEquals("/webapp/a%zz/b%", UriNormalizer.normalize("/webapp/a%zz/b%"));
+		assertEquals("/webapp/a b%c3", UriNormalizer.normalize("/webapp/a%20b%C3"));
+		assertNull(UriNormalizer.normalize(null));
+
+		List<Pattern> patterns = PatternMatchingUtils.getPatternList("/webapp", "/admin/.*,/images/.*", false);
+		assertTrue(PatternMatchingUtils.matches(UriNormalizer.normalize("/webapp//Admin/users;jsessionid=ABC123"), patterns));
+		assertTrue(PatternMatchingUtils.matches(UriNormalizer.normalize("/webapp/%69mages/logo.png"), patterns));
+		assertFalse(PatternMatchingUtils.matches("/webapp/Admin/users", patterns));
+	}
+
+	public void testGlobMatches() {
+		List<UriPattern> patterns = PatternMatchingUtils.getUriPatternList("/webapp", "/static/**,*.js,/css/**/site.css,/occurrences/*/images,/ws/?ata/**/*.json", Syntax.GLOB, true);
+		UriPatternMatcher matcher = new UriPatternMatcher(patterns);
+
+		assertEquals(0, matcher.indexOf("/webapp/static"));
+		assertEquals(0, matcher.indexOf("/webapp/static/"));
+		assertEquals(0, matcher.indexOf("/webapp/STATIC/images/logo.png"));
+		assertEquals(-1, matcher.indexOf("/webapp/staticfiles/logo.png"));
+
+		assertEquals(1, matcher.indexOf("/webapp/app.js"));
+		assertEquals(1, matcher.indexOf("/webapp/assets/vendor/jquery.min.js"));
+		assertEquals(-1, matcher.indexOf("/webapp/app.json"));
+		assertEquals(-1, matcher.indexOf("/other/app.js"));
+
+		assertEquals(2, matcher.indexOf("/webapp/css/site.css"));
+		assertEquals(2, matcher.indexOf("/webapp/css/theme/dark/site.css"));
+		assertEquals(-1, matcher.indexOf("/webapp/css/theme-site.css"));
+
+		assertEquals(3, matcher.indexOf("/webapp/occurrences/35661424/images"));
+		assertEquals(-1, matcher.indexOf("/webapp/occurrences/3566/1424/images"));
+
+		assertEquals(4, matcher.indexOf("/webapp/ws/data/occurrences.json"));
+		assertEquals(4, matcher.indexOf("/webapp/ws/Data/a/b/c.json"));
+		assertEquals(-1, matcher.indexOf("/webapp/ws/metadata/c.json"));
+		assertEquals(-1, matcher.indexOf("/webapp/ws/data/a/b/c.json/x"));
+
+		assertFalse(PatternMatchingUtils.getUriPatternList("/webapp", "/static/**", Syntax.GLOB, false).get(0).matches("/webapp/STATIC/x"));
+
+		// Pathological input for a backtracking matcher
+		StringBuilder uri = new StringBuilder("/webapp/");
+		for (int i = 0; i < 10000; i++) {
+			uri.append("a/");
+		}
+		UriPattern slow = PatternMatchingUtils.getUriPatternList("", "/**/a/**/a/**/a/**/b", Syntax.GLOB, true).get(0);
+		assertFalse(slow.matches(uri.toString()));
+		assertTrue(slow.matches(uri.append("b").toString()));
+
+		// Regex and glob entries can be mixed in one list
+		UriPatternMatcher mixed = PatternMatchingUtils.getPatternMatcher("/webapp", "glob:/static/**, /occurrences/\\d+, regex:/ws/.*", Syntax.REGEX, false, true);
+		assertTrue(mixed.matches("/webapp/static/logo.png"));
+		assertTrue(mixed.matches("/webapp/occurrences/35661424"));
+		assertTrue(mixed.matches("/webapp/ws/occurrences"));
+		assertFalse(mixed.matches("/webapp/occurrences/abc"));
+		assertTrue(mixed.getPatterns().get(0) instanceof GlobUriPattern);
+	}
 }
@@ -0,0 +1,147 @@
+package au.org.ala.cas;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apereo.cas.client.authentication.AttributePrincipal;
+import org.apereo.cas.client.authentication.AttributePrincipalImpl;
+import org.apereo.cas.client.proxy.ProxyRetriever;
+import org.apereo.cas.client.validation.AssertionImpl;
+
+import au.org.ala.cas.client.CompactAttributePrincipal;
+import au.org.ala.cas.client.ProxyWebServiceHelper;
+import au.org.ala.cas.util.AuthenticationUtils;
+import junit.framework.TestCase;
+
+public class ProxyWebServiceHelperTest extends TestCase {
+
+	private static final String USER_NAME = "proxy.user@ala.org.au";
+
+	public void testProxyInvocation() throws Exception {
+		FakeCasServer server = new FakeCasServer(USER_NAME, "unused");
+		ProxyWebServiceHelper helper = new ProxyWebServiceHelper();
+		try {
+			AttributePrincipal principal = new AttributePrincipalImpl(USER_NAME, new HashMap<String, Object>(), "PGT-1-fake",
+					(ProxyRetriever) (pgt, service) -> server.issueProxyTicket(service));
+			AssertionImpl assertion = new AssertionImpl(principal);
+
+			assertEquals("{\"service\":\"/service/co/co13.json\"}", helper.invoke(assertion, server.getServiceUrl("co/co13.json")));
+			assertEquals("{\"service\":\"/service/co/co13.json\"}", helper.invoke(assertion, server.getServiceUrl("co/co13.json")));
+			assertEquals(2, server.getServiceRequests());
+			// No Ticket Granting Ticket or credentials are needed on behalf of a proxied user
+			assertEquals(0, server.getTicketGrantingRequests());
+		} finally {
+			helper.shutdown();
+			server.close();
+		}
+	}
+
+	public void testPrefetchedTicketsAreUsedOnce() {
+		CountingPrincipal principal = new CountingPrincipal(USER_NAME);
+		ProxyWebServiceHelper helper = new ProxyWebServiceHelper(ProxyWebServiceHelper.RECOMMENDED_PREFETCH_TTL);
+		try {
+			Set<String> tickets = new HashSet<String>();
+			for (int i = 0; i < 5; i++) {
+				String ticket = helper.getProxyTicket(principal, "https://service.ala.org.au/ws?page=1");
+				assertNotNull(ticket);
+				assertTrue("Ticket " + ticket + " was used twice", tickets.add(ticket));
+			}
+			// Only the first two tickets are obtained by the caller, the others were prefetched in the background
+			assertEquals(2, principal.callerThreadRequests.get());
+			assertTrue(principal.requests.get() >= 5);
+			// For the exact URL invoked, query included
+			assertEquals(Collections.singleton("https://service.ala.org.au/ws?page=1"), principal.services);
+
+			// Another query is another service, with tickets of its own
+			assertNotNull(helper.getProxyTicket(principal, "https://service.ala.org.au/ws?page=2"));
+			assertEquals(3, principal.callerThreadRequests.get());
+			assertTrue(principal.services.contains("https://service.ala.org.au/ws?page=2"));
+		} finally {
+			helper.shutdown();
+		}
+	}
+
+	public void testOneOffUrlsAreNotPrefetched() {
+		CountingPrincipal principal = new CountingPrincipal(USER_NAME);
+		ProxyWebServiceHelper helper = new ProxyWebServiceHelper();
+		for (int i = 0; i < 5; i++) {
+			assertNotNull(helper.getProxyTicket(principal, "https://service.ala.org.au/ws?id=" + i));
+		}
+		assertEquals(5, principal.requests.get());
+
+		principal = new CountingPrincipal(USER_NAME);
+		helper = new ProxyWebServiceHelper(ProxyWebServiceHelper.RECOMMENDED_PREFETCH_TTL);
+		try {
+			for (int i = 0; i < 5; i++) {
+				assertNotNull(helper.getProxyTicket(principal, "https://service" + i + ".ala.org.au/ws?id=" + i));
+			}
+			assertEquals(5, principal.callerThreadRequests.get());
+			// A prefetched ticket would be taken, waiting for it if need be, rather than requested by the caller
+			for (int i = 0; i < 5; i++) {
+				assertNotNull(helper.getProxyTicket(principal, "https://service" + i + ".ala.org.au/ws?id=" + i));
+			}
+			assertEquals(10, principal.callerThreadRequests.get());
+		} finally {
+			helper.shutdown();
+		}
+	}
+
+	public void testPrefetchingDisabled() {
+		CountingPrincipal principal = new CountingPrincipal(USER_NAME);
+		ProxyWebServiceHelper helper = new ProxyWebServiceHelper(0);
+		for (int i = 0; i < 3; i++) {
+			assertNotNull(helper.getProxyTicket(principal, "https://service.ala.org.au/ws"));
+		}
+		assertEquals(3, principal.callerThreadRequests.get());
+		assertEquals(3, principal.requests.get());
+	}
+
+	public void testCachedProxyGrantingTicket() {
+		CountingPrincipal principal = new CountingPrincipal(USER_NAME);
+		ProxyWebServiceHelper helper = new ProxyWebServiceHelper(0);
+
+		assertNotNull(helper.getProxyTicket(principal, "https://service.ala.org.au/ws"));
+
+		// A compact principal without its proxy delegate falls back to the Proxy Granting Ticket cached for the user
+		AttributePrincipal compact = CompactAttributePrincipal.compact(principal, AuthenticationUtils.ATTR_ROLES, false);
+		assertNull(compact.getProxyTicketFor("https://service.ala.org.au/ws"));
+		assertNotNull(helper.getProxyTicket(compact, "https://service.ala.org.au/ws"));
+		assertEquals(2, principal.requests.get());
+
+		// Another user cannot use it
+		AttributePrincipal other = CompactAttributePrincipal.compact(new CountingPrincipal("other.user@ala.org.au"), AuthenticationUtils.ATTR_ROLES, false);
+		assertNull(helper.getProxyTicket(other, "https://service.ala.org.au/ws"));
+	}
+
+	public void testNoAssertion() {
+		ProxyWebServiceHelper helper = new ProxyWebServiceHelper(0);
+		assertNull(helper.invoke((AssertionImpl) null, "https://service.ala.org.au/ws"));
+		assertNull(helper.invoke(new ServletMocks.Request("/app/page").proxy(), "https://service.ala.org.au/ws"));
+	}
+
+	private static class CountingPrincipal extends AttributePrincipalImpl {
+
+		private static final long serialVersionUID = 1L;
+
+		final AtomicInteger requests = new AtomicInteger();
+		final AtomicInteger callerThreadRequests = new AtomicInteger();
+		final Set<String> services = Collections.synchronizedSet(new HashSet<String>());
+		private final Thread caller = Thread.currentThread();
+
+		CountingPrincipal(String name) {
+			super(name, new HashMap<String, Object>());
+		}
+
+		@Override
+		public String getProxyTicketFor(String service) {
+			if (Thread.currentThread() == caller) {
+				callerThreadRequests.incrementAndGet();
+			}
+			services.add(service);
+			return "PT-" + requests.incrementAndGet() + "-" + getName();
+		}
+	}
+}
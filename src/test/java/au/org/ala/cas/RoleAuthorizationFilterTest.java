@@ -0,0 +1,107 @@
+package au.org.ala.cas;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.apereo.cas.client.authentication.AttributePrincipalImpl;
+
+import au.org.ala.cas.client.RoleAuthorizationFilter;
+import junit.framework.TestCase;
+
+public class RoleAuthorizationFilterTest extends TestCase {
+
+	private RoleAuthorizationFilter filter;
+
+	@Override
+	protected void setUp() throws Exception {
+		Map<String, String> initParams = new HashMap<String, String>();
+		initParams.put(RoleAuthorizationFilter.URI_ROLE_FILTER_PATTERN,
+				"\n  /admin/.*, /alaAdmin.* = ROLE_ADMIN\n  /edit/.* = ROLE_EDITOR, ROLE_ADMIN ; glob:/admin/reports/** = ROLE_REPORTER\n");
+		initParams.put("roleAttribute", "role");
+		initParams.put("ignoreCase", "true");
+		filter = new RoleAuthorizationFilter();
+		filter.init(ServletMocks.filterConfig(initParams, new HashMap<String, String>(), "/webapp"));
+	}
+
+	public void testUnprotectedUri() throws Exception {
+		assertEquals(200, doFilter("/webapp/occurrences/search", null));
+	}
+
+	public void testUnauthenticated() throws Exception {
+		assertEquals(403, doFilter("/webapp/admin/users", null));
+	}
+
+	public void testRolesAsString() throws Exception {
+		assertEquals(200, doFilter("/webapp/admin/users", "ROLE_USER, ROLE_ADMIN"));
+		assertEquals(200, doFilter("/webapp/alaAdmin", "role_admin"));
+		assertEquals(403, doFilter("/webapp/admin/users", "ROLE_USER,ROLE_ADMINISTRATOR"));
+		assertEquals(200, doFilter("/webapp/edit/1", "ROLE_EDITOR"));
+		assertEquals(403, doFilter("/webapp/edit/1", "ROLE_USER"));
+	}
+
+	public void testRolesAsCollection() throws Exception {
+		assertEquals(200, doFilter("/webapp/edit/1", Arrays.asList("ROLE_USER", "ROLE_EDITOR")));
+		assertEquals(200, doFilter("/webapp/edit/1", new HashSet<String>(Arrays.asList("ROLE_ADMIN"))));
+		assertEquals(403, doFilter("/webapp/admin/users", Arrays.asList("ROLE_USER", "ROLE_EDITOR")));
+	}
+
+	public void testEveryMatchingRuleMustBeSatisfied() throws Exception {
+		assertEquals(403, doFilter("/webapp/admin/reports/2020", "ROLE_ADMIN"));
+		assertEquals(403, doFilter("/webapp/admin/reports/2020", "ROLE_REPORTER"));
+		assertEquals(200, doFilter("/webapp/admin/reports/2020", "ROLE_ADMIN,ROLE_REPORTER"));
+	}
+
+	public void testEquivalentUris() throws Exception {
+		// Equivalent spellings of a protected URI are subject to the same rules
+		assertEquals(403, doFilter("/webapp//admin/users", "ROLE_USER"));
+		assertEquals(403, doFilter("/webapp/admin;x=1/users", "ROLE_USER"));
+		assertEquals(403, doFilter("/webapp/%61dmin/users", "ROLE_USER"));
+		assertEquals(403, doFilter("/webapp/public/../admin/users", "ROLE_USER"));
+		assertEquals(403, doFilter("/webapp/public/%2e%2e/admin/users", "ROLE_USER"));
+		assertEquals(403, doFilter("/WebApp/Admin/users", "ROLE_USER"));
+		assertEquals(200, doFilter("/webapp//admin/users", "ROLE_ADMIN"));
+	}
+
+	public void testEquivalentUrisWhenNormalizing() throws Exception {
+		Map<String, String> initParams = new HashMap<String, String>();
+		initParams.put(RoleAuthorizationFilter.URI_ROLE_FILTER_PATTERN, "/admin/.* = ROLE_ADMIN");
+		initParams.put("roleAttribute", "role");
+		initParams.put("normalizeUri", "true");
+		filter = new RoleAuthorizationFilter();
+		filter.init(ServletMocks.filterConfig(initParams, new HashMap<String, String>(), "/webapp"));
+
+		assertEquals(403, doFilter("/webapp//admin/users", "ROLE_USER"));
+		assertEquals(403, doFilter("/webapp/admin;x=1/users", "ROLE_USER"));
+		assertEquals(403, doFilter("/webapp/%61dmin/users", "ROLE_USER"));
+		assertEquals(403, doFilter("/webapp/public/../admin/users", "ROLE_USER"));
+		assertEquals(200, doFilter("/webapp/public/../admin/users", "ROLE_ADMIN"));
+	}
+
+	public void testInvalidRule() throws Exception {
+		Map<String, String> initParams = new HashMap<String, String>();
+		initParams.put(RoleAuthorizationFilter.URI_ROLE_FILTER_PATTERN, "/admin/.*");
+		try {
+			new RoleAuthorizationFilter().init(ServletMocks.filterConfig(initParams, new HashMap<String, String>(), "/webapp"));
+			fail("Invalid rule exception not thrown");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private int doFilter(String uri, Object roles) throws Exception {
+		ServletMocks.Request request = new ServletMocks.Request(uri);
+		if (roles != null) {
+			Map<String, Object> attributes = new HashMap<String, Object>();
+			attributes.put("role", roles);
+			request.principal(new AttributePrincipalImpl("user@ala.org.au", attributes));
+		}
+		ServletMocks.Response response = new ServletMocks.Response();
+		ServletMocks.Chain chain = new ServletMocks.Chain();
+
+		filter.doFilter(request.proxy(), response.proxy(), chain);
+		assertEquals(response.getStatus() == 200 ? 1 : 0, chain.getCalls());
+		return response.getStatus();
+	}
+}
@@ -0,0 +1,290 @@
+package au.org.ala.cas;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Minimal dynamic proxy based stand-ins for the servlet API, implementing only what the filters under test use.
+ */
+public class ServletMocks {
+
+	public static FilterConfig filterConfig(final Map<String, String> initParams, final Map<String, String> contextParams, final String contextPath) {
+		final ServletContext servletContext = proxy(ServletContext.class, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getContextPath")) {
+					return contextPath;
+				} else if (method.getName().equals("getInitParameter")) {
+					return contextParams.get(args[0]);
+				} else if (method.getName().equals("getInitParameterNames")) {
+					return Collections.enumeration(contextParams.keySet());
+				}
+				return defaultValue(method);
+			}
+		});
+		return proxy(FilterConfig.class, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getServletContext")) {
+					return servletContext;
+				} else if (method.getName().equals("getInitParameter")) {
+					return initParams.get(args[0]);
+				} else if (method.getName().equals("getInitParameterNames")) {
+					return Collections.enumeration(initParams.keySet());
+				} else if (method.getName().equals("getFilterName")) {
+					return "test";
+				}
+				return defaultValue(method);
+			}
+		});
+	}
+
+	public static class Request implements InvocationHandler {
+
+		private final String requestUri;
+		private String serverName = "localhost";
+		private final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		private final List<Cookie> cookies = new ArrayList<Cookie>();
+		private final Map<String, Object> attributes = new HashMap<String, Object>();
+		private Principal principal;
+		private HttpSession session;
+
+		public Request(String requestUri) {
+			this.requestUri = requestUri;
+		}
+
+		public Request serverName(String serverName) {
+			this.serverName = serverName;
+			return this;
+		}
+
+		public Request header(String name, String value) {
+			headers.put(name, value);
+			return this;
+		}
+
+		public Request cookie(String name, String value) {
+			cookies.add(new Cookie(name, value));
+			return this;
+		}
+
+		public Request principal(Principal principal) {
+			this.principal = principal;
+			return this;
+		}
+
+		public Request session(HttpSession session) {
+			this.session = session;
+			return this;
+		}
+
+		public Map<String, Object> getAttributes() {
+			return attributes;
+		}
+
+		public HttpServletRequest proxy() {
+			return ServletMocks.proxy(HttpServletRequest.class, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("getRequestURI")) {
+				return requestUri;
+			} else if (name.equals("getHeader")) {
+				return headers.get(args[0]);
+			} else if (name.equals("getCookies")) {
+				return cookies.isEmpty() ? null : cookies.toArray(new Cookie[0]);
+			} else if (name.equals("getUserPrincipal")) {
+				return principal;
+			} else if (name.equals("getRemoteUser")) {
+				return principal == null ? null : principal.getName();
+			} else if (name.equals("getSession")) {
+				return session;
+			} else if (name.equals("getAttribute")) {
+				return attributes.get(args[0]);
+			} else if (name.equals("setAttribute")) {
+				attributes.put((String) args[0], args[1]);
+				return null;
+			} else if (name.equals("removeAttribute")) {
+				attributes.remove(args[0]);
+				return null;
+			} else if (name.equals("getMethod")) {
+				return "GET";
+			} else if (name.equals("getServerName")) {
+				return serverName;
+			}
+			return defaultValue(method);
+		}
+	}
+
+	public static class Response implements InvocationHandler {
+
+		private final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		private final StringWriter body = new StringWriter();
+		private int status = HttpServletResponse.SC_OK;
+		private String contentType;
+		private String redirect;
+
+		public int getStatus() {
+			return status;
+		}
+
+		public String getHeader(String name) {
+			return headers.get(name);
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+
+		public String getBody() {
+			return body.toString();
+		}
+
+		public String getRedirect() {
+			return redirect;
+		}
+
+		public HttpServletResponse proxy() {
+			return ServletMocks.proxy(HttpServletResponse.class, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws IOException {
+			String name = method.getName();
+			if (name.equals("sendError") || name.equals("setStatus")) {
+				status = (Integer) args[0];
+				return null;
+			} else if (name.equals("setHeader") || name.equals("addHeader")) {
+				headers.put((String) args[0], (String) args[1]);
+				return null;
+			} else if (name.equals("setContentType")) {
+				contentType = (String) args[0];
+				return null;
+			} else if (name.equals("getWriter")) {
+				return new PrintWriter(body, true);
+			} else if (name.equals("sendRedirect")) {
+				status = 302;
+				redirect = (String) args[0];
+				return null;
+			} else if (name.equals("encodeRedirectURL")) {
+				return args[0];
+			}
+			return defaultValue(method);
+		}
+	}
+
+	public static class Session implements InvocationHandler {
+
+		private final String id;
+		private final Map<String, Object> attributes = new HashMap<String, Object>();
+		private volatile long lastAccessedTime = System.currentTimeMillis();
+		private volatile int maxInactiveInterval = 1800;
+		private volatile boolean invalid;
+
+		public Session(String id) {
+			this.id = id;
+		}
+
+		public Session lastAccessedTime(long lastAccessedTime) {
+			this.lastAccessedTime = lastAccessedTime;
+			return this;
+		}
+
+		public boolean isInvalid() {
+			return invalid;
+		}
+
+		public HttpSession proxy() {
+			return ServletMocks.proxy(HttpSession.class, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("getId")) {
+				return id;
+			} else if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			} else if (name.equals("equals")) {
+				return proxy == args[0];
+			} else if (name.equals("toString")) {
+				return "Session[" + id + "]";
+			} else if (invalid) {
+				throw new IllegalStateException("Session " + id + " has been invalidated");
+			} else if (name.equals("invalidate")) {
+				invalid = true;
+				return null;
+			} else if (name.equals("getLastAccessedTime")) {
+				return lastAccessedTime;
+			} else if (name.equals("getMaxInactiveInterval")) {
+				return maxInactiveInterval;
+			} else if (name.equals("setMaxInactiveInterval")) {
+				maxInactiveInterval = (Integer) args[0];
+				return null;
+			} else if (name.equals("getAttribute")) {
+				return attributes.get(args[0]);
+			} else if (name.equals("setAttribute")) {
+				attributes.put((String) args[0], args[1]);
+				return null;
+			} else if (name.equals("removeAttribute")) {
+				attributes.remove(args[0]);
+				return null;
+			}
+			return defaultValue(method);
+		}
+	}
+
+	public static class Chain implements FilterChain {
+
+		private int calls;
+		private ServletRequest request;
+
+		public void doFilter(ServletRequest request, ServletResponse response) {
+			this.calls++;
+			this.request = request;
+		}
+
+		public int getCalls() {
+			return calls;
+		}
+
+		public ServletRequest getRequest() {
+			return request;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(ServletMocks.class.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	private static Object defaultValue(Method method) {
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+}
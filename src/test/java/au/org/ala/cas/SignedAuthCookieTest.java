@@ -0,0 +1,69 @@
+package au.org.ala.cas;
+
+import java.nio.charset.StandardCharsets;
+
+import au.org.ala.cas.util.AuthenticationCookieUtils;
+import au.org.ala.cas.util.SignedAuthCookie;
+import junit.framework.TestCase;
+
+public class SignedAuthCookieTest extends TestCase {
+
+	private static final byte[] KEY = "test-signing-key".getBytes(StandardCharsets.UTF_8);
+
+	private long now;
+	private long expiry;
+
+	@Override
+	protected void setUp() throws Exception {
+		now = System.currentTimeMillis();
+		expiry = now / 1000 + 3600;
+	}
+
+	public void testVerify() {
+		String value = SignedAuthCookie.create("12345", "j\u00f6rg@example.org", expiry, KEY);
+		SignedAuthCookie cookie = SignedAuthCookie.verify(value, KEY, now);
+		assertNotNull(cookie);
+		assertEquals("12345", cookie.getUserId());
+		assertEquals("j\u00f6rg@example.org", cookie.getEmail());
+		assertEquals(expiry, cookie.getExpiry());
+	}
+
+	public void testRejected() {
+		String value = SignedAuthCookie.create("12345", "user@example.org", expiry, KEY);
+		assertNull(SignedAuthCookie.verify(value, "other-key".getBytes(StandardCharsets.UTF_8), now));
+		assertNull(SignedAuthCookie.verify(value, KEY, (expiry + 1) * 1000));
+		assertNull(SignedAuthCookie.verify(null, KEY, now));
+		assertNull(SignedAuthCookie.verify("user@example.org", KEY, now));
+		assertNull(SignedAuthCookie.verify("v1.1.2.3", KEY, now));
+
+		// Changing any claim invalidates the MAC
+		String forged = SignedAuthCookie.create("1", "admin@example.org", expiry, KEY);
+		int claimsEnd = value.lastIndexOf('.');
+		assertNull(SignedAuthCookie.verify(forged.substring(0, forged.lastIndexOf('.')) + value.substring(claimsEnd), KEY, now));
+		assertNull(SignedAuthCookie.verify(value.replace("v1." + expiry, "v1." + (expiry + 1000)), KEY, now));
+		char last = value.charAt(value.length() - 1);
+		assertNull(SignedAuthCookie.verify(value.substring(0, value.length() - 1) + (last == 'A' ? 'B' : 'A'), KEY, now));
+		assertNull(SignedAuthCookie.verify(value.substring(0, value.length() - 1) + '=', KEY, now));
+		// Including variants that differ only in the unused low bits of the last character
+		for (char c : "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray()) {
+			if (c != last) {
+				assertNull(SignedAuthCookie.verify(value.substring(0, value.length() - 1) + c, KEY, now));
+			}
+		}
+	}
+
+	public void testRequest() {
+		String value = SignedAuthCookie.create("12345", "user@example.org", expiry, KEY);
+		ServletMocks.Request request = new ServletMocks.Request("/").cookie(AuthenticationCookieUtils.ALA_AUTH_COOKIE, value);
+		SignedAuthCookie cookie = AuthenticationCookieUtils.getSignedAuthCookie(request.proxy(), KEY);
+		assertEquals("12345", cookie.getUserId());
+		// The result depends on the key, so a cookie verified with one key is not returned for another
+		byte[] otherKey = "other-signing-key".getBytes(StandardCharsets.UTF_8);
+		assertNull(AuthenticationCookieUtils.getSignedAuthCookie(request.proxy(), otherKey));
+		assertEquals("12345", AuthenticationCookieUtils.getSignedAuthCookie(request.proxy(), KEY).getUserId());
+
+		ServletMocks.Request unsigned = new ServletMocks.Request("/").cookie(AuthenticationCookieUtils.ALA_AUTH_COOKIE, "user@example.org");
+		assertNull(AuthenticationCookieUtils.getSignedAuthCookie(unsigned.proxy(), KEY));
+		assertNull(AuthenticationCookieUtils.getSignedAuthCookie(new ServletMocks.Request("/").proxy(), KEY));
+	}
+}
@@ -0,0 +1,151 @@
+package au.org.ala.cas;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.JMX;
+import javax.management.ObjectName;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+
+import au.org.ala.cas.client.UriFilter;
+import au.org.ala.cas.client.UriFilterDiagnosticsMBean;
+import junit.framework.TestCase;
+
+public class UriFilterTest extends TestCase {
+
+	private UriFilter filter;
+	private Map<String, String> initParams;
+	private Map<String, String> contextParams;
+
+	@Override
+	protected void setUp() throws Exception {
+		RecordingFilter.calls = 0;
+		initParams = new HashMap<String, String>();
+		initParams.put("filterClass", RecordingFilter.class.getName());
+		contextParams = new HashMap<String, String>();
+		contextParams.put(UriFilter.URI_FILTER_PATTERN, "/admin/.*");
+		contextParams.put(UriFilter.URI_EXCLUSION_FILTER_PATTERN, "/admin/public/.*");
+		contextParams.put(UriFilter.URI_FILTER_PATTERN + "@Spatial.example.org", "/layers/**");
+		contextParams.put(UriFilter.URI_FILTER_PATTERN + UriFilter.PATTERN_SYNTAX_SUFFIX + "@spatial.example.org", "glob");
+		contextParams.put(UriFilter.URI_EXCLUSION_FILTER_PATTERN + "@images.example.org", "");
+	}
+
+	public void testDefaultRoutingTable() throws Exception {
+		init();
+		assertTrue(routed("/webapp/admin/users", "www.example.org", null));
+		assertFalse(routed("/webapp/admin/public/help", "www.example.org", null));
+		assertFalse(routed("/webapp/layers/1", "www.example.org", null));
+	}
+
+	public void testHostRoutingTables() throws Exception {
+		init();
+		// The host's own inclusion list replaces the default, its exclusion list is inherited
+		assertTrue(routed("/webapp/layers/1", "spatial.example.org", null));
+		assertTrue(routed("/webapp/layers/1", "SPATIAL.example.org", null));
+		assertFalse(routed("/webapp/admin/users", "spatial.example.org", null));
+
+		// The host's own empty exclusion list replaces the default, its inclusion list is inherited
+		assertTrue(routed("/webapp/admin/public/help", "images.example.org", null));
+		assertFalse(routed("/webapp/layers/1", "images.example.org", null));
+	}
+
+	public void testForwardedHost() throws Exception {
+		init();
+		assertFalse(routed("/webapp/layers/1", "internal", "spatial.example.org"));
+
+		initParams.put(UriFilter.TRUST_FORWARDED_HOST, "true");
+		init();
+		assertTrue(routed("/webapp/layers/1", "internal", "spatial.example.org:443, proxy.example.org"));
+		assertFalse(routed("/webapp/layers/1", "spatial.example.org", "www.example.org"));
+		assertTrue(routed("/webapp/layers/1", "spatial.example.org", null));
+	}
+
+	public void testDiagnostics() throws Exception {
+		initParams.put(UriFilter.DIAGNOSTICS, "true");
+		init();
+		ObjectName name = new ObjectName("au.org.ala.cas:type=UriFilter,context=" + ObjectName.quote("/webapp") + ",name=" + ObjectName.quote("test"));
+		UriFilterDiagnosticsMBean diagnostics = JMX.newMBeanProxy(ManagementFactory.getPlatformMBeanServer(), name, UriFilterDiagnosticsMBean.class);
+
+		assertTrue(routed("/webapp/admin/users", "www.example.org", null));
+		assertTrue(routed("/webapp/admin/users", "www.example.org", null));
+		assertFalse(routed("/webapp/admin/public/help", "www.example.org", null));
+		assertFalse(routed("/webapp/other", "www.example.org", null));
+		assertTrue(routed("/webapp/layers/1", "spatial.example.org", null));
+
+		assertEquals(3, diagnostics.getDelegateInvocations());
+		assertEquals(-1, diagnostics.getWarmUpPasses());
+		assertTrue(diagnostics.getDelegateMaxMillis() >= diagnostics.getDelegateMeanMillis());
+		assertTrue(Arrays.asList(diagnostics.getTierHits()).contains("default uriFilterPattern = 2"));
+		assertTrue(Arrays.asList(diagnostics.getTierHits()).contains("default uriExclusionFilterPattern = 1"));
+		assertTrue(Arrays.asList(diagnostics.getTierHits()).contains("default no match = 1"));
+		assertTrue(Arrays.asList(diagnostics.getPatternHits()).contains("spatial.example.org uriFilterPattern@spatial.example.org[0] /webapp/layers/** = 1"));
+		assertTrue(Arrays.asList(diagnostics.getRoutingTable()).contains("spatial.example.org uriExclusionFilterPattern (inherited)[0] /webapp/admin/public/.*"));
+
+		String explanation = diagnostics.explain("/webapp/admin/public/help");
+		assertTrue(explanation, explanation.contains("Matches uriExclusionFilterPattern[0]"));
+		assertTrue(explanation, explanation.contains("Also matches uriFilterPattern[0]"));
+		assertTrue(explanation, explanation.contains("Result: passed down the filter chain"));
+		explanation = diagnostics.explainForHost("Spatial.example.org", "/webapp/layers/1");
+		assertTrue(explanation, explanation.contains("Routing table: spatial.example.org"));
+		assertTrue(explanation, explanation.contains("Result: forwarded to " + RecordingFilter.class.getName()));
+
+		diagnostics.reset();
+		assertEquals(0, diagnostics.getDelegateInvocations());
+		filter.destroy();
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+
+	public void testWarmUp() throws Exception {
+		initParams.put(UriFilter.DIAGNOSTICS, "true");
+		initParams.put(UriFilter.ADAPTIVE_PATTERN_ORDERING, "true");
+		initParams.put(UriFilter.WARM_UP_URIS, "/admin/users, /admin/public/help\n/layers/1");
+		init();
+		// The warm-up thread may already have finished
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals("UriFilter-warm-up-test")) {
+				assertTrue(thread.isDaemon());
+				thread.join(30000);
+				assertFalse(thread.isAlive());
+			}
+		}
+		ObjectName name = new ObjectName("au.org.ala.cas:type=UriFilter,context=" + ObjectName.quote("/webapp") + ",name=" + ObjectName.quote("test"));
+		UriFilterDiagnosticsMBean diagnostics = JMX.newMBeanProxy(ManagementFactory.getPlatformMBeanServer(), name, UriFilterDiagnosticsMBean.class);
+		assertTrue(diagnostics.getWarmUpPasses() > 0);
+
+		// Warming up neither counts hits nor changes the routing
+		assertTrue(Arrays.asList(diagnostics.getTierHits()).contains("default uriFilterPattern = 0"));
+		assertTrue(routed("/webapp/admin/users", "www.example.org", null));
+		assertFalse(routed("/webapp/admin/public/help", "www.example.org", null));
+		filter.destroy();
+	}
+
+	private void init() throws Exception {
+		filter = new UriFilter();
+		filter.init(ServletMocks.filterConfig(initParams, contextParams, "/webapp"));
+	}
+
+	private boolean routed(String uri, String serverName, String forwardedHost) throws Exception {
+		ServletMocks.Request request = new ServletMocks.Request(uri).serverName(serverName);
+		if (forwardedHost != null) {
+			request.header(UriFilter.X_FORWARDED_HOST, forwardedHost);
+		}
+		int calls = RecordingFilter.calls;
+		filter.doFilter(request.proxy(), new ServletMocks.Response().proxy(), new ServletMocks.Chain());
+		return RecordingFilter.calls > calls;
+	}
+
+	public static class RecordingFilter implements Filter {
+
+		static int calls;
+
+		public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) {
+			calls++;
+		}
+	}
+}
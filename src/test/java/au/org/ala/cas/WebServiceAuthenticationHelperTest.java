@@ -1,14 +1,68 @@
 package au.org.ala.cas;
 
+import java.util.concurrent.CountDownLatch;
+
+import au.org.ala.cas.benchmark.InvokeLoadBenchmark;
 import au.org.ala.cas.client.WebServiceAuthenticationHelper;
 import junit.framework.TestCase;
 
 public class WebServiceAuthenticationHelperTest extends TestCase {
 
+	private static final String USER_NAME = "hit.user@ala.org.au";
+	private static final String PASSWORD = "hit-password";
+
+	private FakeCasServer server;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeCasServer(USER_NAME, PASSWORD);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.close();
+	}
+
 	public void testWebServiceInvocation() {
-        // test removed as server has been deprecated
-//		WebServiceAuthenticationHelper wsw = new WebServiceAuthenticationHelper("https://alatstdb1-cbr.vm.csiro.au", "hit.user@ala.org.au", "hit-password");
-//		String response = wsw.invoke("http://collections.ala.org.au/co/co13.json");
-//		System.out.println(response);
+		WebServiceAuthenticationHelper wsw = new WebServiceAuthenticationHelper(server.getCasServerUrl(), USER_NAME, PASSWORD);
+		assertEquals(1, server.getTicketGrantingRequests());
+
+		assertEquals("{\"service\":\"/service/co/co13.json\"}", wsw.invoke(server.getServiceUrl("co/co13.json")));
+		assertEquals("{\"service\":\"/service/co/co14.json\"}", wsw.invoke(server.getServiceUrl("co/co14.json")));
+
+		// The TGT is reused, but each invocation needs its own service ticket
+		assertEquals(1, server.getTicketGrantingRequests());
+		assertEquals(2, server.getServiceTicketRequests());
+		assertEquals(2, server.getServiceRequests());
+	}
+
+	public void testBackgroundAuthentication() {
+		CountDownLatch held = server.hold();
+		WebServiceAuthenticationHelper wsw = new WebServiceAuthenticationHelper(server.getCasServerUrl(), USER_NAME, PASSWORD, true);
+		// Construction does not wait for CAS, which is still holding the Ticket Granting Ticket request
+		assertFalse(wsw.isAuthenticationComplete());
+		held.countDown();
+
+		// The first invocation waits for the Ticket Granting Ticket
+		assertEquals("{\"service\":\"/service/co/co13.json\"}", wsw.invoke(server.getServiceUrl("co/co13.json")));
+		assertTrue(wsw.isAuthenticationComplete());
+		assertEquals(1, server.getTicketGrantingRequests());
+	}
+
+	public void testInvalidCredentials() {
+		WebServiceAuthenticationHelper wsw = new WebServiceAuthenticationHelper(server.getCasServerUrl(), USER_NAME, "wrong-password");
+
+		assertNull(wsw.invoke(server.getServiceUrl("co/co13.json")));
+		assertEquals(0, server.getServiceTicketRequests());
+		assertEquals(0, server.getServiceRequests());
+	}
+
+	public void testConcurrentInvocation() throws Exception {
+		WebServiceAuthenticationHelper wsw = new WebServiceAuthenticationHelper(server.getCasServerUrl(), USER_NAME, PASSWORD);
+
+		InvokeLoadBenchmark.Result result = InvokeLoadBenchmark.run(wsw, server.getServiceUrl("load"), 8, 200);
+		assertEquals(200, result.getInvocations());
+		assertEquals(0, result.getFailures());
+		assertEquals(200, server.getServiceRequests());
 	}
 }
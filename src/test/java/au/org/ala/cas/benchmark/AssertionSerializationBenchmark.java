@@ -0,0 +1,79 @@
+package au.org.ala.cas.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.apereo.cas.client.validation.Assertion;
+
+import au.org.ala.cas.client.CompactAssertion;
+import au.org.ala.cas.util.AuthenticationUtils;
+
+/**
+ * Compares the serialized size, and the time to serialize and deserialize, of the CAS assertion as validated against
+ * a {@link CompactAssertion}, as happens to every changed session when sessions are replicated.
+ * <p>
+ * Run the <code>main</code> method from the test classpath, optionally with the argument
+ * <code>[number of iterations]</code>.
+ */
+public class AssertionSerializationBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+		Assertion validated = PrincipalMemoryBenchmark.createAssertion(1);
+		Assertion compact = CompactAssertion.compact(validated, AuthenticationUtils.ATTR_ROLES, false);
+
+		System.out.println("form, bytes, serialize ns/op, deserialize ns/op");
+		for (int round = 0; round < 2; round++) {
+			// The first round is a warm-up
+			String validatedResult = run("validated", validated, iterations);
+			String compactResult = run("compact", compact, iterations);
+			if (round > 0) {
+				System.out.println(validatedResult);
+				System.out.println(compactResult);
+			}
+		}
+	}
+
+	static String run(String form, Assertion assertion, int iterations) throws Exception {
+		byte[] bytes = serialize(assertion);
+
+		long start = System.nanoTime();
+		long total = 0;
+		for (int i = 0; i < iterations; i++) {
+			total += serialize(assertion).length;
+		}
+		long serializeNanos = (System.nanoTime() - start) / iterations;
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			total += ((Assertion) deserialize(bytes)).getAttributes().size();
+		}
+		long deserializeNanos = (System.nanoTime() - start) / iterations;
+
+		if (total == 0) {
+			throw new IllegalStateException();
+		}
+		return String.format("%s, %d, %d, %d", form, bytes.length, serializeNanos, deserializeNanos);
+	}
+
+	static byte[] serialize(Object o) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(o);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package au.org.ala.cas.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import au.org.ala.cas.FakeCasServer;
+import au.org.ala.cas.client.WebServiceAuthenticationHelper;
+
+/**
+ * Repeatable load test of {@link WebServiceAuthenticationHelper#invoke(String)} against a {@link FakeCasServer}.
+ * <p>
+ * For each concurrency level a fixed number of invocations is spread over that many threads, after an untimed
+ * warm-up round, and the throughput and latency percentiles are reported.
+ * <p>
+ * Run the <code>main</code> method from the test classpath, optionally with the arguments
+ * <code>[concurrency levels, e.g. 1,4,16,64] [invocations per level] [simulated latency in ms]</code>.
+ */
+public class InvokeLoadBenchmark {
+
+	private static final String USER_NAME = "load.user@ala.org.au";
+	private static final String PASSWORD = "load-password";
+
+	public static void main(String[] args) throws Exception {
+		int[] concurrencyLevels = args.length > 0 ? parseLevels(args[0]) : new int[] { 1, 4, 16, 64 };
+		int invocations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+		try (FakeCasServer server = new FakeCasServer(USER_NAME, PASSWORD)) {
+			server.setLatency(latencyMillis);
+			WebServiceAuthenticationHelper helper = new WebServiceAuthenticationHelper(server.getCasServerUrl(), USER_NAME, PASSWORD);
+			String serviceUrl = server.getServiceUrl("load");
+
+			System.out.println(Result.HEADER);
+			for (int concurrency : concurrencyLevels) {
+				run(helper, serviceUrl, concurrency, Math.min(invocations, 100 * concurrency));
+				System.out.println(run(helper, serviceUrl, concurrency, invocations));
+			}
+		}
+	}
+
+	/**
+	 * Invokes the service <code>invocations</code> times from <code>concurrency</code> threads.
+	 *
+	 * @param helper Authenticated helper under test
+	 * @param serviceUrl Service to invoke
+	 * @param concurrency Number of concurrent callers
+	 * @param invocations Total number of invocations, shared between the callers
+	 * @return The measured throughput and latencies
+	 */
+	public static Result run(final WebServiceAuthenticationHelper helper, final String serviceUrl, int concurrency, int invocations) throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		final CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<long[]>> futures = new ArrayList<Future<long[]>>();
+			for (int t = 0; t < concurrency; t++) {
+				final int share = invocations / concurrency + (t < invocations % concurrency ? 1 : 0);
+				futures.add(executor.submit(new Callable<long[]>() {
+					public long[] call() throws Exception {
+						long[] latencies = new long[share];
+						start.await();
+						for (int i = 0; i < share; i++) {
+							long begin = System.nanoTime();
+							String response = helper.invoke(serviceUrl);
+							long elapsed = System.nanoTime() - begin;
+							// Failed invocations are recorded as negative latencies
+							latencies[i] = response == null ? -elapsed : elapsed;
+						}
+						return latencies;
+					}
+				}));
+			}
+
+			long begin = System.nanoTime();
+			start.countDown();
+			long[] latencies = new long[invocations];
+			int offset = 0;
+			for (Future<long[]> future : futures) {
+				long[] share = future.get();
+				System.arraycopy(share, 0, latencies, offset, share.length);
+				offset += share.length;
+			}
+			return new Result(concurrency, latencies, System.nanoTime() - begin);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static int[] parseLevels(String levels) {
+		String[] parts = levels.split(",");
+		int[] result = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			result[i] = Integer.parseInt(parts[i].trim());
+		}
+		return result;
+	}
+
+	/**
+	 * Throughput and latency percentiles of one load test run.
+	 */
+	public static class Result {
+
+		static final String HEADER = String.format("%11s %11s %8s %12s %9s %9s %9s %9s",
+				"concurrency", "invocations", "failures", "throughput/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+
+		private final int concurrency;
+		private final long[] sortedLatencies;
+		private final int failures;
+		private final long elapsedNanos;
+
+		Result(int concurrency, long[] latencies, long elapsedNanos) {
+			int failures = 0;
+			for (int i = 0; i < latencies.length; i++) {
+				if (latencies[i] < 0) {
+					failures++;
+					latencies[i] = -latencies[i];
+				}
+			}
+			Arrays.sort(latencies);
+			this.concurrency = concurrency;
+			this.sortedLatencies = latencies;
+			this.failures = failures;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public int getInvocations() {
+			return sortedLatencies.length;
+		}
+
+		public int getFailures() {
+			return failures;
+		}
+
+		public double getThroughput() {
+			return sortedLatencies.length / (elapsedNanos / 1e9);
+		}
+
+		/**
+		 * @param percentile Percentile between 0 and 100
+		 * @return The latency in milliseconds at the given percentile (nearest rank)
+		 */
+		public double getLatencyMillis(double percentile) {
+			if (sortedLatencies.length == 0) {
+				return 0;
+			}
+			int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+			return sortedLatencies[Math.max(0, Math.min(rank, sortedLatencies.length) - 1)] / 1e6;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%11d %11d %8d %12.1f %9.3f %9.3f %9.3f %9.3f",
+					concurrency, getInvocations(), failures, getThroughput(),
+					getLatencyMillis(50), getLatencyMillis(90), getLatencyMillis(99), getLatencyMillis(100));
+		}
+	}
+}
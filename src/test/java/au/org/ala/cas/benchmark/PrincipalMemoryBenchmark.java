@@ -0,0 +1,86 @@
+package au.org.ala.cas.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apereo.cas.client.authentication.AttributePrincipalImpl;
+import org.apereo.cas.client.validation.Assertion;
+import org.apereo.cas.client.validation.AssertionImpl;
+
+import au.org.ala.cas.client.CompactAssertion;
+import au.org.ala.cas.util.AuthenticationUtils;
+
+/**
+ * Measures the heap retained per session by the CAS assertion, as validated and after {@link CompactAssertion#compact}.
+ * <p>
+ * Each simulated session holds an assertion with the attributes an ALA CAS server releases.  The attribute names and
+ * role values are fresh strings for every session, as they are when parsed from a validation response.
+ * <p>
+ * Run the <code>main</code> method from the test classpath, optionally with the argument
+ * <code>[number of sessions]</code>, and with a fixed heap size, e.g. <code>-Xms1g -Xmx1g</code>, for stable results.
+ */
+public class PrincipalMemoryBenchmark {
+
+	private static final String[] ROLES = { "ROLE_USER", "ROLE_ADMIN", "ROLE_EDITOR", "ROLE_COLLECTION_ADMIN" };
+
+	public static void main(String[] args) throws Exception {
+		int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+		long validated = measure(sessions, false);
+		long compact = measure(sessions, true);
+
+		System.out.println("sessions, validated bytes/session, compact bytes/session, saved bytes/session");
+		System.out.println(String.format("%d, %d, %d, %d", sessions, validated, compact, validated - compact));
+	}
+
+	/**
+	 * @return The average number of bytes retained per session
+	 */
+	static long measure(int sessions, boolean compact) {
+		List<Assertion> store = new ArrayList<Assertion>(sessions);
+		long before = usedMemory();
+		for (int i = 0; i < sessions; i++) {
+			Assertion assertion = createAssertion(i);
+			store.add(compact ? CompactAssertion.compact(assertion, AuthenticationUtils.ATTR_ROLES, false) : assertion);
+		}
+		long after = usedMemory();
+		if (store.size() != sessions) {
+			throw new IllegalStateException();
+		}
+		return (after - before) / sessions;
+	}
+
+	static Assertion createAssertion(int i) {
+		Map<String, Object> attributes = new HashMap<String, Object>();
+		attributes.put(new String(AuthenticationUtils.ATTR_USER_ID), Integer.toString(i));
+		attributes.put(new String(AuthenticationUtils.ATTR_EMAIL_ADDRESS), "user" + i + "@example.org");
+		attributes.put(new String(AuthenticationUtils.ATTR_FIRST_NAME), "First" + i);
+		attributes.put(new String(AuthenticationUtils.ATTR_LAST_NAME), "Last" + i);
+		attributes.put(new String("authority"), new String(ROLES[i % ROLES.length]));
+		StringBuilder roles = new StringBuilder(ROLES[0]);
+		for (int r = 1; r <= i % ROLES.length; r++) {
+			roles.append(',').append(ROLES[r]);
+		}
+		attributes.put(new String(AuthenticationUtils.ATTR_ROLES), roles.toString());
+
+		Date now = new Date();
+		return new AssertionImpl(new AttributePrincipalImpl("user" + i + "@example.org", attributes),
+				now, new Date(now.getTime() + 3600000), now, new HashMap<String, Object>());
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
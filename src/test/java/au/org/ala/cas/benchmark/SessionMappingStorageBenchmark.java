@@ -0,0 +1,99 @@
+package au.org.ala.cas.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jakarta.servlet.http.HttpSession;
+
+import org.apereo.cas.client.session.HashMapBackedSessionMappingStorage;
+import org.apereo.cas.client.session.SessionMappingStorage;
+
+import au.org.ala.cas.ServletMocks;
+import au.org.ala.cas.client.ExpiringSessionMappingStorage;
+
+/**
+ * Compares the throughput of {@link ExpiringSessionMappingStorage} and {@link HashMapBackedSessionMappingStorage} as
+ * the number of threads logging in and out increases.
+ * <p>
+ * Each operation maps a new service ticket to a session, as a login does, and then removes it, one time in ten by the
+ * service ticket as a logout request does and otherwise by the session id as the session listener does when a session
+ * times out.
+ * <p>
+ * Run the <code>main</code> method from the test classpath, optionally with the arguments
+ * <code>[concurrency levels, e.g. 1,4,16,64] [operations per thread]</code>.
+ */
+public class SessionMappingStorageBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String[] levels = (args.length > 0 ? args[0] : "1,4,16,64").split(",");
+		int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+		System.out.println("storage, threads, ops/s");
+		for (String level : levels) {
+			int threads = Integer.parseInt(level.trim());
+			for (int round = 0; round < 2; round++) {
+				// The first round is a warm-up
+				double hashMap = run(new HashMapBackedSessionMappingStorage(), threads, operations);
+				double expiring = run(new ExpiringSessionMappingStorage(), threads, operations);
+				if (round > 0) {
+					System.out.println(String.format("HashMapBacked, %d, %.0f", threads, hashMap));
+					System.out.println(String.format("Expiring, %d, %.0f", threads, expiring));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The throughput in operations per second
+	 */
+	static double run(final SessionMappingStorage storage, int threads, final int operations) throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int t = 0; t < threads; t++) {
+				final String prefix = "thread-" + t + "-";
+				// A pool of live sessions per thread, so that the storage always holds some mappings
+				final HttpSession[] sessions = new HttpSession[1024];
+				final String[] sessionIds = new String[sessions.length];
+				for (int i = 0; i < sessions.length; i++) {
+					sessionIds[i] = prefix + i;
+					sessions[i] = new ServletMocks.Session(sessionIds[i]).proxy();
+				}
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						start.await();
+						for (int i = 0; i < operations; i++) {
+							int s = i & (sessions.length - 1);
+							String mappingId = "ST-" + prefix + i;
+							storage.addSessionById(mappingId, sessions[s]);
+							// Remove the mapping added half a pool ago
+							int old = (i - sessions.length / 2) & (sessions.length - 1);
+							if (i % 10 == 0) {
+								storage.removeSessionByMappingId("ST-" + prefix + (i - sessions.length / 2));
+							} else {
+								storage.removeBySessionById(sessionIds[old]);
+							}
+						}
+						return null;
+					}
+				}));
+			}
+
+			long startNanos = System.nanoTime();
+			start.countDown();
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+			long elapsed = System.nanoTime() - startNanos;
+			return (double) threads * operations * 1000000000L / elapsed;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}